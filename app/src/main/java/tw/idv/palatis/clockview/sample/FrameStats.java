@@ -0,0 +1,150 @@
+package tw.idv.palatis.clockview.sample;
+
+import android.os.Build;
+import android.os.Debug;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Collects frame durations and reports their percentiles together with the GC count and heap
+ * usage since the last {@link #reset()}.
+ */
+public class FrameStats {
+    private static final long FRAME_BUDGET_NANOS = 16666667L;
+
+    private final long[] mFrames;
+    private int mCount = 0;
+    private int mNext = 0;
+    private long mLastFrameTimeNanos = -1;
+    private long mStartGcCount;
+
+    public FrameStats(int capacity) {
+        mFrames = new long[capacity];
+        reset();
+    }
+
+    public void reset() {
+        mCount = 0;
+        mNext = 0;
+        mLastFrameTimeNanos = -1;
+        mStartGcCount = getGcCount();
+    }
+
+    /**
+     * @param frameTimeNanos the vsync time passed to {@link android.view.Choreographer.FrameCallback#doFrame(long)}.
+     */
+    public void onFrame(long frameTimeNanos) {
+        if (mLastFrameTimeNanos >= 0)
+            record(frameTimeNanos - mLastFrameTimeNanos);
+        mLastFrameTimeNanos = frameTimeNanos;
+    }
+
+    public void record(long durationNanos) {
+        mFrames[mNext] = durationNanos;
+        mNext = (mNext + 1) % mFrames.length;
+        mCount = Math.min(mCount + 1, mFrames.length);
+    }
+
+    public int getFrameCount() {
+        return mCount;
+    }
+
+    public Report report() {
+        final long[] frames = Arrays.copyOf(mFrames, mCount);
+        Arrays.sort(frames);
+
+        int janky = 0;
+        for (final long frame : frames)
+            if (frame > FRAME_BUDGET_NANOS)
+                ++janky;
+
+        final long gcCount = getGcCount();
+        final Runtime runtime = Runtime.getRuntime();
+        return new Report(
+                frames.length,
+                percentile(frames, 0.50f),
+                percentile(frames, 0.90f),
+                percentile(frames, 0.99f),
+                frames.length > 0 ? frames[frames.length - 1] / 1e6f : 0,
+                janky,
+                gcCount >= 0 && mStartGcCount >= 0 ? gcCount - mStartGcCount : -1,
+                (runtime.totalMemory() - runtime.freeMemory()) / 1024,
+                runtime.maxMemory() / 1024
+        );
+    }
+
+    private static float percentile(long[] sorted, float p) {
+        if (sorted.length == 0)
+            return 0;
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1e6f;
+    }
+
+    private static long getGcCount() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            final String count = Debug.getRuntimeStat("art.gc.gc-count");
+            if (count != null) {
+                try {
+                    return Long.parseLong(count);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return getJvmGcCount();
+    }
+
+    /**
+     * The runtime stats are missing on the JVM the unit tests run on, sum up its garbage collectors
+     * instead. android.jar has no java.lang.management, hence the reflection.
+     */
+    private static long getJvmGcCount() {
+        try {
+            final List<?> beans = (List<?>) Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getGarbageCollectorMXBeans").invoke(null);
+            final Method getCollectionCount = Class.forName("java.lang.management.GarbageCollectorMXBean")
+                    .getMethod("getCollectionCount");
+            long total = -1;
+            for (final Object bean : beans) {
+                final long count = (Long) getCollectionCount.invoke(bean);
+                if (count != -1)
+                    total = Math.max(total, 0) + count;
+            }
+            return total;
+        } catch (Exception ex) {
+            return -1;
+        }
+    }
+
+    public static class Report {
+        public final int frames;
+        public final float p50Ms;
+        public final float p90Ms;
+        public final float p99Ms;
+        public final float maxMs;
+        public final int jankyFrames;
+        public final long gcCount;
+        public final long heapUsedKb;
+        public final long heapMaxKb;
+
+        public Report(int frames, float p50Ms, float p90Ms, float p99Ms, float maxMs, int jankyFrames, long gcCount, long heapUsedKb, long heapMaxKb) {
+            this.frames = frames;
+            this.p50Ms = p50Ms;
+            this.p90Ms = p90Ms;
+            this.p99Ms = p99Ms;
+            this.maxMs = maxMs;
+            this.jankyFrames = jankyFrames;
+            this.gcCount = gcCount;
+            this.heapUsedKb = heapUsedKb;
+            this.heapMaxKb = heapMaxKb;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "frames %d, janky %d\np50 %.2fms, p90 %.2fms, p99 %.2fms, max %.2fms\nGCs %d, heap %dKB / %dKB",
+                    frames, jankyFrames, p50Ms, p90Ms, p99Ms, maxMs, gcCount, heapUsedKb, heapMaxKb);
+        }
+    }
+}
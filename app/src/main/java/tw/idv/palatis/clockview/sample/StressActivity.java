@@ -0,0 +1,228 @@
+package tw.idv.palatis.clockview.sample;
+
+import android.content.res.Resources;
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+import android.os.Bundle;
+import android.os.Handler;
+import android.support.v4.content.res.ResourcesCompat;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.Choreographer;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import tw.idv.palatis.clockview.ClockDialDrawable;
+import tw.idv.palatis.clockview.ClockHandDrawable;
+import tw.idv.palatis.clockview.ClockView;
+
+/**
+ * 1000 ticking clocks with mixed faces in a RecyclerView that keeps flinging up and down, with a
+ * frame time / GC / heap report on top.
+ */
+public class StressActivity extends AppCompatActivity {
+    private static final String TAG = "StressActivity";
+
+    static final int CLOCK_COUNT = 1000;
+    private static final int SPAN_COUNT = 4;
+    private static final long TICK_INTERVAL = 1000;
+    private static final long FLING_INTERVAL = 1500;
+    private static final int FLING_VELOCITY = 12000;
+
+    private static final int FACE_XML = 0;
+    private static final int FACE_PROCEDURAL = 1;
+    private static final int FACE_NUMERALS = 2;
+    private static final int FACE_COUNT = 3;
+
+    private final Handler mHandler = new Handler();
+    private final FrameStats mFrameStats = new FrameStats(4096);
+
+    private RecyclerView mRecyclerView;
+    private TextView mReportView;
+    private int mTick = 0;
+    private boolean mFlingDown = true;
+    private boolean mRunning = false;
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRunning)
+                return;
+            mFrameStats.onFrame(frameTimeNanos);
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
+
+    private final Runnable mTickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            ++mTick;
+            for (int i = 0; i < mRecyclerView.getChildCount(); ++i) {
+                final ClockHolder holder = (ClockHolder) mRecyclerView.getChildViewHolder(mRecyclerView.getChildAt(i));
+                holder.tick(mTick);
+            }
+
+            final FrameStats.Report report = mFrameStats.report();
+            mReportView.setText(report.toString());
+            Log.i(TAG, report.toString().replace('\n', ' '));
+
+            mHandler.postDelayed(this, TICK_INTERVAL);
+        }
+    };
+
+    private final Runnable mFlingRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mRecyclerView.fling(0, mFlingDown ? FLING_VELOCITY : -FLING_VELOCITY);
+            if (!mRecyclerView.canScrollVertically(mFlingDown ? 1 : -1))
+                mFlingDown = !mFlingDown;
+            mHandler.postDelayed(this, FLING_INTERVAL);
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_stress);
+
+        mReportView = findViewById(R.id.report);
+        mRecyclerView = findViewById(R.id.clocks);
+        mRecyclerView.setLayoutManager(new GridLayoutManager(this, SPAN_COUNT));
+        mRecyclerView.setAdapter(new ClockAdapter());
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mRunning = true;
+        mFrameStats.reset();
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        mHandler.postDelayed(mTickRunnable, TICK_INTERVAL);
+        mHandler.postDelayed(mFlingRunnable, FLING_INTERVAL);
+    }
+
+    @Override
+    protected void onPause() {
+        mRunning = false;
+        Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+        mHandler.removeCallbacks(mTickRunnable);
+        mHandler.removeCallbacks(mFlingRunnable);
+        super.onPause();
+    }
+
+    RecyclerView getRecyclerView() {
+        return mRecyclerView;
+    }
+
+    FrameStats getFrameStats() {
+        return mFrameStats;
+    }
+
+    private static class ClockHolder extends RecyclerView.ViewHolder {
+        private final ClockView mClock;
+        // dial, hour, minute and second hand of every face, built once per holder and then reused
+        private final Drawable[][] mFaces = new Drawable[FACE_COUNT][];
+        private int mFace = -1;
+        private int mPosition;
+
+        ClockHolder(View itemView) {
+            super(itemView);
+            mClock = (ClockView) itemView;
+        }
+
+        void bind(int position) {
+            mPosition = position;
+            final int face = position % FACE_COUNT;
+            if (mFace != face) {
+                mFace = face;
+                applyFace(face);
+            }
+            mClock.setHandValue(ClockView.HAND_HOUR, (position / 60) % 12, false);
+            mClock.setHandValue(ClockView.HAND_MINUTE, position % 60, false);
+            mClock.setHandValue(ClockView.HAND_SECOND, (position * 7) % 60, false);
+        }
+
+        void tick(int tick) {
+            // every visible clock animates its second hand, and a quarter of them their minute hand too
+            mClock.setHandValue(ClockView.HAND_SECOND, (mPosition * 7 + tick) % 60, true);
+            if ((mPosition + tick) % 4 == 0)
+                mClock.setHandValue(ClockView.HAND_MINUTE, (mPosition + tick) % 60, true);
+        }
+
+        private void applyFace(int face) {
+            if (mFaces[face] == null)
+                mFaces[face] = createFace(face);
+            final Drawable[] drawables = mFaces[face];
+            mClock.setDialDrawable(drawables[0]);
+            mClock.setHandDrawable(ClockView.HAND_HOUR, drawables[1]);
+            mClock.setHandDrawable(ClockView.HAND_MINUTE, drawables[2]);
+            mClock.setHandDrawable(ClockView.HAND_SECOND, drawables[3]);
+        }
+
+        private Drawable[] createFace(int face) {
+            final Resources res = mClock.getResources();
+            final Resources.Theme theme = mClock.getContext().getTheme();
+            final ClockHandDrawable second = new ClockHandDrawable(res, 40);
+            second.setWidth(dp(res, 1));
+            second.setTail(dp(res, 8));
+            second.setColor(Color.RED);
+
+            switch (face) {
+                case FACE_PROCEDURAL:
+                    return new Drawable[]{
+                            new ClockDialDrawable(res),
+                            new ClockHandDrawable(res, 20),
+                            new ClockHandDrawable(res, 30),
+                            second
+                    };
+                case FACE_NUMERALS:
+                    final ClockDialDrawable dial = new ClockDialDrawable(res);
+                    dial.setTickCount(60);
+                    dial.setMajorTickInterval(5);
+                    dial.setNumeralTextSize(dp(res, 10));
+                    dial.setNumeralInset(dp(res, 18));
+                    final ClockHandDrawable hour = new ClockHandDrawable(res, 20);
+                    hour.setWidth(dp(res, 4));
+                    hour.setTaper(0.5f);
+                    final ClockHandDrawable minute = new ClockHandDrawable(res, 32);
+                    minute.setWidth(dp(res, 3));
+                    minute.setTaper(0.5f);
+                    return new Drawable[]{dial, hour, minute, second};
+                case FACE_XML:
+                default:
+                    return new Drawable[]{
+                            ResourcesCompat.getDrawable(res, tw.idv.palatis.clockview.R.drawable.cv_default_dial, theme),
+                            ResourcesCompat.getDrawable(res, tw.idv.palatis.clockview.R.drawable.cv_default_hand_hour, theme),
+                            ResourcesCompat.getDrawable(res, tw.idv.palatis.clockview.R.drawable.cv_default_hand_minute, theme),
+                            second
+                    };
+            }
+        }
+
+        private static float dp(Resources res, float dp) {
+            return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp, res.getDisplayMetrics());
+        }
+    }
+
+    private static class ClockAdapter extends RecyclerView.Adapter<ClockHolder> {
+        @Override
+        public ClockHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return new ClockHolder(LayoutInflater.from(parent.getContext()).inflate(R.layout.item_clock, parent, false));
+        }
+
+        @Override
+        public void onBindViewHolder(ClockHolder holder, int position) {
+            holder.bind(position);
+        }
+
+        @Override
+        public int getItemCount() {
+            return CLOCK_COUNT;
+        }
+    }
+}
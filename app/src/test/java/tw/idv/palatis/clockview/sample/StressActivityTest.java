@@ -0,0 +1,76 @@
+package tw.idv.palatis.clockview.sample;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link StressActivity} headless for a while and records how long each frame takes to run
+ * the main looper and draw the whole window into a software bitmap. The report is written to
+ * {@code build/reports/stress/stress.txt} so scheduler and cache changes can be compared.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+@LooperMode(LooperMode.Mode.PAUSED)
+@Config(sdk = 33)
+public class StressActivityTest {
+    private static final int FRAMES = 600;
+    private static final long FRAME_INTERVAL_MS = 16;
+
+    private static final File REPORT_DIR = new File(System.getProperty("clockview.reportDir", "build/reports/stress"));
+
+    @Test
+    public void stress_report() throws IOException {
+        final ActivityController<StressActivity> controller = Robolectric.buildActivity(StressActivity.class).setup();
+        final StressActivity activity = controller.get();
+        final RecyclerView recyclerView = activity.getRecyclerView();
+        assertEquals(StressActivity.CLOCK_COUNT, recyclerView.getAdapter().getItemCount());
+
+        final View root = activity.getWindow().getDecorView();
+        final Bitmap bitmap = Bitmap.createBitmap(
+                Math.max(1, root.getWidth()), Math.max(1, root.getHeight()), Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bitmap);
+
+        final FrameStats stats = new FrameStats(FRAMES);
+        int firstPosition = 0;
+        for (int i = 0; i < FRAMES; ++i) {
+            final long start = System.nanoTime();
+            ShadowLooper.idleMainLooper(FRAME_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            root.draw(canvas);
+            stats.record(System.nanoTime() - start);
+
+            firstPosition = Math.max(firstPosition,
+                    recyclerView.getChildAdapterPosition(recyclerView.getChildAt(0)));
+        }
+        final FrameStats.Report report = stats.report();
+        controller.pause().stop().destroy();
+
+        if (!REPORT_DIR.isDirectory() && !REPORT_DIR.mkdirs())
+            throw new IOException("unable to create " + REPORT_DIR);
+        try (PrintWriter writer = new PrintWriter(new File(REPORT_DIR, "stress.txt"), "UTF-8")) {
+            writer.println(report);
+        }
+
+        assertEquals(FRAMES, report.frames);
+        assertTrue("the list never scrolled", firstPosition > 0);
+    }
+}
@@ -0,0 +1,377 @@
+package tw.idv.palatis.clockview;
+
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.support.annotation.ColorInt;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.TypedValue;
+
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/**
+ * A round dial with a ring, evenly spaced tick marks and optional hour numerals, described by its
+ * tick count and sizes instead of a layer-list.
+ * <p>
+ * The ring, every tick and the outlines of the numerals are compiled into one {@link Path} whenever
+ * the parameters, the bounds, the locale or the 12/24 hour mode change, so drawing the dial is a
+ * single {@link Canvas#drawPath} and no text is shaped or measured while drawing.
+ */
+public class ClockDialDrawable extends Drawable {
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Path mPath = new Path();
+    private final Path mTickPath = new Path();
+    private final Matrix mTickMatrix = new Matrix();
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Rect mTextBounds = new Rect();
+    private boolean mPathDirty = true;
+
+    private int mAlpha = 0xff;
+    @ColorInt
+    private int mColor;
+
+    private float mSize;
+    private float mRingWidth;
+    private int mTickCount;
+    private int mMajorTickInterval;
+    private float mTickInset;
+    private float mTickLength;
+    private float mMajorTickLength;
+    private float mTickWidth;
+
+    private boolean mIs24hr;
+    private Locale mLocale = Locale.getDefault();
+    private float mNumeralTextSize;
+    private float mNumeralInset;
+
+    public ClockDialDrawable(Resources res) {
+        this(dp(res, 100), dp(res, 2), 12, 3,
+                dp(res, 2), dp(res, 4), dp(res, 8),
+                dp(res, 2), 0xffffffff);
+    }
+
+    public ClockDialDrawable(float size, float ringWidth, int tickCount, int majorTickInterval, float tickInset, float tickLength, float majorTickLength, float tickWidth, @ColorInt int color) {
+        mSize = size;
+        mRingWidth = ringWidth;
+        mTickCount = tickCount;
+        mMajorTickInterval = majorTickInterval;
+        mTickInset = tickInset;
+        mTickLength = tickLength;
+        mMajorTickLength = majorTickLength;
+        mTickWidth = tickWidth;
+        mPaint.setStyle(Paint.Style.FILL);
+        mTextPaint.setTextAlign(Paint.Align.LEFT);
+        setColor(color);
+    }
+
+    private static float dp(Resources res, float dp) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp, res.getDisplayMetrics());
+    }
+
+    public float getSize() {
+        return mSize;
+    }
+
+    public void setSize(float size) {
+        if (mSize != size) {
+            mSize = size;
+            invalidatePath();
+        }
+    }
+
+    public float getRingWidth() {
+        return mRingWidth;
+    }
+
+    public void setRingWidth(float ringWidth) {
+        if (mRingWidth != ringWidth) {
+            mRingWidth = ringWidth;
+            invalidatePath();
+        }
+    }
+
+    public int getTickCount() {
+        return mTickCount;
+    }
+
+    public void setTickCount(int tickCount) {
+        if (mTickCount != tickCount) {
+            mTickCount = tickCount;
+            invalidatePath();
+        }
+    }
+
+    public int getMajorTickInterval() {
+        return mMajorTickInterval;
+    }
+
+    /**
+     * @param interval every {@code interval}-th tick starting from 12 o'clock is a major tick, 0 for none.
+     */
+    public void setMajorTickInterval(int interval) {
+        if (mMajorTickInterval != interval) {
+            mMajorTickInterval = interval;
+            invalidatePath();
+        }
+    }
+
+    public float getTickInset() {
+        return mTickInset;
+    }
+
+    public void setTickInset(float tickInset) {
+        if (mTickInset != tickInset) {
+            mTickInset = tickInset;
+            invalidatePath();
+        }
+    }
+
+    public float getTickLength() {
+        return mTickLength;
+    }
+
+    public void setTickLength(float tickLength) {
+        if (mTickLength != tickLength) {
+            mTickLength = tickLength;
+            invalidatePath();
+        }
+    }
+
+    public float getMajorTickLength() {
+        return mMajorTickLength;
+    }
+
+    public void setMajorTickLength(float majorTickLength) {
+        if (mMajorTickLength != majorTickLength) {
+            mMajorTickLength = majorTickLength;
+            invalidatePath();
+        }
+    }
+
+    public float getTickWidth() {
+        return mTickWidth;
+    }
+
+    public void setTickWidth(float tickWidth) {
+        if (mTickWidth != tickWidth) {
+            mTickWidth = tickWidth;
+            invalidatePath();
+        }
+    }
+
+    public boolean is24hr() {
+        return mIs24hr;
+    }
+
+    /**
+     * @param is24hr draw 24 numerals (24, 1 ... 23) instead of 12 (12, 1 ... 11).
+     */
+    public void setIs24hr(boolean is24hr) {
+        if (mIs24hr != is24hr) {
+            mIs24hr = is24hr;
+            if (mNumeralTextSize > 0)
+                invalidatePath();
+        }
+    }
+
+    public Locale getLocale() {
+        return mLocale;
+    }
+
+    /**
+     * @param locale the locale used to format the numerals.
+     */
+    public void setLocale(@NonNull Locale locale) {
+        if (!mLocale.equals(locale)) {
+            mLocale = locale;
+            if (mNumeralTextSize > 0)
+                invalidatePath();
+        }
+    }
+
+    public Typeface getTypeface() {
+        return mTextPaint.getTypeface();
+    }
+
+    public void setTypeface(@Nullable Typeface typeface) {
+        if (mTextPaint.getTypeface() != typeface) {
+            mTextPaint.setTypeface(typeface);
+            if (mNumeralTextSize > 0)
+                invalidatePath();
+        }
+    }
+
+    public float getNumeralTextSize() {
+        return mNumeralTextSize;
+    }
+
+    /**
+     * @param textSize the numeral text size in pixels, 0 to draw no numerals.
+     */
+    public void setNumeralTextSize(float textSize) {
+        if (mNumeralTextSize != textSize) {
+            mNumeralTextSize = textSize;
+            invalidatePath();
+        }
+    }
+
+    public float getNumeralInset() {
+        return mNumeralInset;
+    }
+
+    /**
+     * @param inset distance in pixels from the edge of the dial to the center of each numeral.
+     */
+    public void setNumeralInset(float inset) {
+        if (mNumeralInset != inset) {
+            mNumeralInset = inset;
+            if (mNumeralTextSize > 0)
+                invalidatePath();
+        }
+    }
+
+    @ColorInt
+    public int getColor() {
+        return mColor;
+    }
+
+    public void setColor(@ColorInt int color) {
+        mColor = color;
+        updatePaintAlpha();
+        invalidateSelf();
+    }
+
+    private void invalidatePath() {
+        mPathDirty = true;
+        invalidateSelf();
+    }
+
+    private void updatePaintAlpha() {
+        mPaint.setColor(mColor);
+        mPaint.setAlpha(((mColor >>> 24) * mAlpha) / 0xff);
+    }
+
+    private void buildPath(Rect bounds) {
+        mPath.rewind();
+        if (mSize <= 0 || bounds.isEmpty())
+            return;
+
+        final float sx = bounds.width() / mSize;
+        final float sy = bounds.height() / mSize;
+        final float cx = bounds.exactCenterX();
+        final float cy = bounds.exactCenterY();
+        final float radius = mSize / 2.0f;
+
+        // the ring, as an outer contour and an opposite wound inner contour, so it fills as a band
+        if (mRingWidth > 0) {
+            mTickPath.rewind();
+            mTickPath.addCircle(0, 0, radius, Path.Direction.CW);
+            mTickPath.addCircle(0, 0, radius - mRingWidth, Path.Direction.CCW);
+            mTickMatrix.setScale(sx, sy);
+            mTickMatrix.postTranslate(cx, cy);
+            mPath.addPath(mTickPath, mTickMatrix);
+        }
+
+        // the ticks, each one a rectangle pointing at 12 o'clock rotated into place
+        for (int i = 0; i < mTickCount; ++i) {
+            final boolean major = mMajorTickInterval > 0 && i % mMajorTickInterval == 0;
+            final float length = major ? mMajorTickLength : mTickLength;
+            if (length <= 0)
+                continue;
+
+            mTickPath.rewind();
+            mTickPath.addRect(
+                    -mTickWidth / 2.0f, -radius + mTickInset,
+                    mTickWidth / 2.0f, -radius + mTickInset + length,
+                    Path.Direction.CW
+            );
+            mTickMatrix.setRotate(360.0f * i / mTickCount);
+            mTickMatrix.postScale(sx, sy);
+            mTickMatrix.postTranslate(cx, cy);
+            mPath.addPath(mTickPath, mTickMatrix);
+        }
+
+        // the numerals, laid out once here and kept as glyph outlines in the dial path
+        if (mNumeralTextSize > 0) {
+            mTextPaint.setTextSize(mNumeralTextSize);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1)
+                mTextPaint.setTextLocale(mLocale);
+            final NumberFormat format = NumberFormat.getIntegerInstance(mLocale);
+            final int count = mIs24hr ? 24 : 12;
+            final float numeralRadius = radius - mNumeralInset;
+            mTickMatrix.setScale(sx, sy);
+            mTickMatrix.postTranslate(cx, cy);
+            for (int i = 0; i < count; ++i) {
+                final String text = format.format(i == 0 ? count : i);
+                final double angle = Math.toRadians(360.0 * i / count);
+                final float x = (float) (Math.sin(angle) * numeralRadius);
+                final float y = (float) (-Math.cos(angle) * numeralRadius);
+
+                mTextPaint.getTextBounds(text, 0, text.length(), mTextBounds);
+                mTextPaint.getTextPath(text, 0, text.length(),
+                        x - mTextBounds.exactCenterX(), y - mTextBounds.exactCenterY(), mTickPath);
+                mPath.addPath(mTickPath, mTickMatrix);
+            }
+        }
+    }
+
+    @Override
+    protected void onBoundsChange(Rect bounds) {
+        super.onBoundsChange(bounds);
+        mPathDirty = true;
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        if (mPathDirty) {
+            buildPath(getBounds());
+            mPathDirty = false;
+        }
+        canvas.drawPath(mPath, mPaint);
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return Math.round(mSize);
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return Math.round(mSize);
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        if (mAlpha != alpha) {
+            mAlpha = alpha;
+            updatePaintAlpha();
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    public int getAlpha() {
+        return mAlpha;
+    }
+
+    @Override
+    public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
@@ -0,0 +1,205 @@
+package tw.idv.palatis.clockview;
+
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.ColorInt;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.TypedValue;
+
+/**
+ * A clock hand described by its length, width, tail and taper instead of a shape drawable.
+ * <p>
+ * The hand points up from the center of a square of {@link #getSize()} pixels, the same layout as
+ * {@code cv_default_hand_hour.xml}. Its outline is compiled into a {@link Path} whenever the
+ * parameters or the bounds change, so drawing it is a single {@link Canvas#drawPath}.
+ */
+public class ClockHandDrawable extends Drawable {
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Path mPath = new Path();
+    private boolean mPathDirty = true;
+
+    private int mAlpha = 0xff;
+    @ColorInt
+    private int mColor;
+
+    private float mSize;
+    private float mLength;
+    private float mWidth;
+    private float mTail;
+    private float mTaper;
+
+    public ClockHandDrawable(Resources res, float lengthDp) {
+        this(dp(res, 100), dp(res, lengthDp), dp(res, 2), 0, 0.0f, 0xffffffff);
+    }
+
+    public ClockHandDrawable(float size, float length, float width, float tail, float taper, @ColorInt int color) {
+        mSize = size;
+        mLength = length;
+        mWidth = width;
+        mTail = tail;
+        mTaper = taper;
+        mPaint.setStyle(Paint.Style.FILL);
+        setColor(color);
+    }
+
+    private static float dp(Resources res, float dp) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp, res.getDisplayMetrics());
+    }
+
+    public float getSize() {
+        return mSize;
+    }
+
+    public void setSize(float size) {
+        if (mSize != size) {
+            mSize = size;
+            invalidatePath();
+        }
+    }
+
+    public float getLength() {
+        return mLength;
+    }
+
+    public void setLength(float length) {
+        if (mLength != length) {
+            mLength = length;
+            invalidatePath();
+        }
+    }
+
+    public float getWidth() {
+        return mWidth;
+    }
+
+    public void setWidth(float width) {
+        if (mWidth != width) {
+            mWidth = width;
+            invalidatePath();
+        }
+    }
+
+    public float getTail() {
+        return mTail;
+    }
+
+    public void setTail(float tail) {
+        if (mTail != tail) {
+            mTail = tail;
+            invalidatePath();
+        }
+    }
+
+    public float getTaper() {
+        return mTaper;
+    }
+
+    /**
+     * @param taper 0 for a straight hand, 1 for a hand that narrows down to a point at its tip.
+     */
+    public void setTaper(float taper) {
+        taper = Math.max(0.0f, Math.min(1.0f, taper));
+        if (mTaper != taper) {
+            mTaper = taper;
+            invalidatePath();
+        }
+    }
+
+    @ColorInt
+    public int getColor() {
+        return mColor;
+    }
+
+    public void setColor(@ColorInt int color) {
+        mColor = color;
+        updatePaintAlpha();
+        invalidateSelf();
+    }
+
+    private void invalidatePath() {
+        mPathDirty = true;
+        invalidateSelf();
+    }
+
+    private void updatePaintAlpha() {
+        mPaint.setColor(mColor);
+        mPaint.setAlpha(((mColor >>> 24) * mAlpha) / 0xff);
+    }
+
+    private void buildPath(Rect bounds) {
+        mPath.rewind();
+        if (mSize <= 0 || bounds.isEmpty())
+            return;
+
+        final float sx = bounds.width() / mSize;
+        final float sy = bounds.height() / mSize;
+        final float cx = bounds.exactCenterX();
+        final float cy = bounds.exactCenterY();
+        final float halfWidth = mWidth / 2.0f * sx;
+        final float halfTip = halfWidth * (1.0f - mTaper);
+
+        mPath.moveTo(cx - halfWidth, cy + mTail * sy);
+        mPath.lineTo(cx + halfWidth, cy + mTail * sy);
+        mPath.lineTo(cx + halfTip, cy - mLength * sy);
+        if (halfTip > 0)
+            mPath.lineTo(cx - halfTip, cy - mLength * sy);
+        mPath.close();
+    }
+
+    @Override
+    protected void onBoundsChange(Rect bounds) {
+        super.onBoundsChange(bounds);
+        mPathDirty = true;
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        if (mPathDirty) {
+            buildPath(getBounds());
+            mPathDirty = false;
+        }
+        canvas.drawPath(mPath, mPaint);
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return Math.round(mSize);
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return Math.round(mSize);
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        if (mAlpha != alpha) {
+            mAlpha = alpha;
+            updatePaintAlpha();
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    public int getAlpha() {
+        return mAlpha;
+    }
+
+    @Override
+    public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
@@ -0,0 +1,721 @@
+package tw.idv.palatis.clockview;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.ColorInt;
+import android.support.annotation.DrawableRes;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.MotionEvent;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+import android.view.ViewParent;
+import android.widget.ImageView;
+
+import java.util.Calendar;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A {@link ClockView} that renders into its own surface on a dedicated thread, paced by the
+ * {@link Choreographer} of that thread, so drawing the clock costs the UI thread nothing.
+ * <p>
+ * It takes the same attributes as {@link ClockView} and forwards the same API to an off-screen
+ * {@link ClockView} that is only ever touched on the render thread. Calls made while the view is
+ * detached are applied directly, without animation. {@link #getHandValue(int)} returns the value
+ * last published by the render thread, so a value set a moment ago may not be visible yet.
+ * <p>
+ * {@link OnHandChangedListener} callbacks are invoked on the UI thread, with this view as their
+ * {@code view} argument.
+ */
+public class ClockSurfaceView extends SurfaceView implements SurfaceHolder.Callback {
+    private static final String TAG = "ClockSurfaceView";
+
+    private final RenderClockView mClock;
+
+    private final Handler mUiHandler = new Handler(Looper.getMainLooper());
+    private volatile HandlerThread mRenderThread = null;
+    private volatile Handler mRenderHandler = null;
+
+    // written on the render thread, read on the UI thread
+    private volatile float[] mHandValues = null;
+    private volatile float[] mHandPoints = null;
+    private volatile int mMinimumWidth = 0;
+    private volatile int mMinimumHeight = 0;
+
+    // only accessed on the render thread
+    private Choreographer mChoreographer = null;
+    private boolean mSurfaceReady = false;
+    private boolean mFramePending = false;
+    private boolean mSweepEnabled = false;
+    private final Calendar mSweepCalendar = Calendar.getInstance();
+
+    // only accessed on the UI thread
+    private boolean mTouchHandled = false;
+    private boolean mAdjustViewBounds;
+    private ImageView.ScaleType mScaleType;
+    private boolean mIs24hr;
+    private boolean mDrawReversed;
+    private OnHandChangedListener mOnHandChangedListener = null;
+
+    private final Runnable mRequestLayout = new Runnable() {
+        @Override
+        public void run() {
+            requestLayout();
+        }
+    };
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mFramePending = false;
+            if (mSweepEnabled) {
+                updateSweep();
+                scheduleFrame();
+            }
+            drawFrame();
+        }
+    };
+
+    // runs on the render thread and hands the callbacks over to the UI thread
+    private final ClockView.OnHandChangedListener mHandChangedForwarder = new ClockView.OnHandChangedListener() {
+        @Override
+        public boolean onHandChangeBegin(ClockView view, int handIndex) {
+            // not called, onTouchEvent() hit tests and asks the listener on the UI thread
+            return true;
+        }
+
+        @Override
+        public void onHandChanged(ClockView view, final int handIndex, final float value, final float oldValue) {
+            publishHandValues();
+            mUiHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mOnHandChangedListener != null)
+                        mOnHandChangedListener.onHandChanged(ClockSurfaceView.this, handIndex, value, oldValue);
+                }
+            });
+        }
+
+        @Override
+        public void onHandChangeEnd(ClockView view, final int handIndex) {
+            if (handIndex == -1)
+                return;
+            mUiHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mOnHandChangedListener != null)
+                        mOnHandChangedListener.onHandChangeEnd(ClockSurfaceView.this, handIndex);
+                }
+            });
+        }
+    };
+
+    private class RenderClockView extends ClockView {
+        public RenderClockView(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+            super(context, attrs, defStyleAttr);
+        }
+
+        @Override
+        public void invalidate() {
+            onClockInvalidated();
+        }
+
+        @Override
+        public void postInvalidate() {
+            onClockInvalidated();
+        }
+
+        @Override
+        public void postInvalidateOnAnimation() {
+            onClockInvalidated();
+        }
+
+        @Override
+        public void invalidate(int l, int t, int r, int b) {
+            // the whole surface is redrawn every frame anyway
+            onClockInvalidated();
+        }
+
+        @Override
+        protected boolean isClockVisible() {
+            return mSurfaceReady;
+        }
+
+        @Override
+        public void scheduleDrawable(@NonNull Drawable who, @NonNull Runnable what, long when) {
+            // never attached, so there is no attach info to post drawable animations with
+            if (verifyDrawable(who) && mRenderHandler != null)
+                mRenderHandler.postAtTime(what, who, when);
+        }
+
+        @Override
+        public void unscheduleDrawable(@NonNull Drawable who, @NonNull Runnable what) {
+            if (mRenderHandler != null)
+                mRenderHandler.removeCallbacks(what, who);
+        }
+
+        @Override
+        public void unscheduleDrawable(Drawable who) {
+            if (mRenderHandler != null)
+                mRenderHandler.removeCallbacksAndMessages(who);
+        }
+    }
+
+    public ClockSurfaceView(Context context) {
+        this(context, null);
+    }
+
+    public ClockSurfaceView(Context context, @Nullable AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public ClockSurfaceView(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        mClock = new RenderClockView(context, attrs, defStyleAttr);
+        mAdjustViewBounds = mClock.getAdjustViewBounds();
+        mScaleType = mClock.getScaleType();
+        mIs24hr = mClock.is24hr();
+        mDrawReversed = mClock.isDrawReversed();
+        publishHandValues();
+        publishMinimumSize();
+
+        final SurfaceHolder holder = getHolder();
+        holder.setFormat(PixelFormat.TRANSLUCENT);
+        holder.addCallback(this);
+    }
+
+    /**
+     * @return the off-screen {@link ClockView}, only safe to use on the render thread.
+     */
+    public ClockView getClockView() {
+        return mClock;
+    }
+
+    @Nullable
+    Looper getRenderLooper() {
+        final HandlerThread thread = mRenderThread;
+        return thread != null ? thread.getLooper() : null;
+    }
+
+    private void startRenderThread() {
+        if (mRenderThread != null)
+            return;
+
+        mRenderThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_DISPLAY);
+        mRenderThread.start();
+        mRenderHandler = new Handler(mRenderThread.getLooper());
+        mRenderHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mChoreographer = Choreographer.getInstance();
+            }
+        });
+    }
+
+    private void stopRenderThread() {
+        if (mRenderThread == null)
+            return;
+
+        runOnRenderThreadAndWait(new Runnable() {
+            @Override
+            public void run() {
+                mSurfaceReady = false;
+                mFramePending = false;
+                if (mChoreographer != null)
+                    mChoreographer.removeFrameCallback(mFrameCallback);
+            }
+        });
+        mRenderThread.quit();
+        mRenderThread = null;
+        mRenderHandler = null;
+    }
+
+    private boolean isRenderThread() {
+        return mRenderThread != null && Looper.myLooper() == mRenderThread.getLooper();
+    }
+
+    private void runOnRenderThread(Runnable action) {
+        if (mRenderHandler == null || isRenderThread())
+            action.run();
+        else
+            mRenderHandler.post(action);
+    }
+
+    private void runOnRenderThreadAndWait(Runnable action) {
+        if (mRenderHandler == null || isRenderThread()) {
+            action.run();
+            return;
+        }
+
+        final FutureTask<Void> task = new FutureTask<>(action, null);
+        mRenderHandler.post(task);
+        try {
+            task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    private void onClockInvalidated() {
+        // also called from the ClockView constructor, before mClock is set
+        if (mClock == null)
+            return;
+        publishHandValues();
+        requestRender();
+    }
+
+    private void publishHandValues() {
+        final int numHands = mClock.getNumHands();
+        float[] values = mHandValues;
+        if (values == null || values.length != numHands)
+            values = new float[numHands];
+        for (int i = 0; i < numHands; ++i)
+            values[i] = mClock.getHandValue(i);
+        // the hand tips and pivots, so onTouchEvent() can hit test without the render thread
+        float[] points = mHandPoints;
+        if (points == null || points.length != numHands << 2)
+            points = new float[numHands << 2];
+        mClock.getHandPoints(points);
+        // the volatile writes publish the values written above
+        mHandValues = values;
+        mHandPoints = points;
+    }
+
+    private void publishMinimumSize() {
+        final int width = mClock.getSuggestedMinimumWidth();
+        final int height = mClock.getSuggestedMinimumHeight();
+        if (mMinimumWidth == width && mMinimumHeight == height)
+            return;
+        mMinimumWidth = width;
+        mMinimumHeight = height;
+        // measure only once the new size is published
+        if (isRenderThread())
+            mUiHandler.post(mRequestLayout);
+        else
+            requestLayout();
+    }
+
+    private void requestRender() {
+        if (mRenderHandler == null)
+            return;
+
+        if (isRenderThread()) {
+            scheduleFrame();
+        } else {
+            mRenderHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    scheduleFrame();
+                }
+            });
+        }
+    }
+
+    private void scheduleFrame() {
+        if (mFramePending || !mSurfaceReady || mChoreographer == null)
+            return;
+        mFramePending = true;
+        mChoreographer.postFrameCallback(mFrameCallback);
+    }
+
+    private void drawFrame() {
+        final SurfaceHolder holder = getHolder();
+        final Canvas canvas = holder.lockCanvas();
+        if (canvas == null)
+            return;
+        try {
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            mClock.draw(canvas);
+        } finally {
+            holder.unlockCanvasAndPost(canvas);
+        }
+        // whatever was drawn is what the next touch is hit tested against
+        publishHandValues();
+    }
+
+    private void updateSweep() {
+        mSweepCalendar.setTimeInMillis(System.currentTimeMillis());
+        final float second = mSweepCalendar.get(Calendar.SECOND) + mSweepCalendar.get(Calendar.MILLISECOND) / 1000.0f;
+        final float minute = mSweepCalendar.get(Calendar.MINUTE) + second / 60.0f;
+        final float hour = mSweepCalendar.get(mClock.is24hr() ? Calendar.HOUR_OF_DAY : Calendar.HOUR) + minute / 60.0f;
+
+        final int numHands = mClock.getNumHands();
+        if (numHands > ClockView.HAND_HOUR)
+            mClock.setHandValue(ClockView.HAND_HOUR, hour, false);
+        if (numHands > ClockView.HAND_MINUTE)
+            mClock.setHandValue(ClockView.HAND_MINUTE, minute, false);
+        if (numHands > ClockView.HAND_SECOND)
+            mClock.setHandValue(ClockView.HAND_SECOND, second, false);
+    }
+
+    /**
+     * @param enabled follow the wall clock on every frame, with a sweeping second hand.
+     */
+    public void setSweepEnabled(final boolean enabled) {
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mSweepEnabled = enabled;
+                scheduleFrame();
+            }
+        });
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        startRenderThread();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        stopRenderThread();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, final int width, final int height) {
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mClock.measure(
+                        MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                        MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY)
+                );
+                mClock.layout(0, 0, width, height);
+                publishHandValues();
+                mSurfaceReady = true;
+                mClock.updateDrawableVisibility(true);
+                scheduleFrame();
+            }
+        });
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        // the surface must not be touched once this returns
+        runOnRenderThreadAndWait(new Runnable() {
+            @Override
+            public void run() {
+                mSurfaceReady = false;
+                mClock.updateDrawableVisibility(false);
+                mFramePending = false;
+                if (mChoreographer != null)
+                    mChoreographer.removeFrameCallback(mFrameCallback);
+            }
+        });
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int minWidth = mMinimumWidth;
+        final int minHeight = mMinimumHeight;
+        int width = resolveSize(minWidth, widthMeasureSpec);
+        int height = resolveSize(minHeight, heightMeasureSpec);
+
+        // same as ClockView.onMeasure(), the render thread lays the clock out at the surface size
+        if (mAdjustViewBounds && minWidth > 0 && minHeight > 0) {
+            final int widthMode = MeasureSpec.getMode(widthMeasureSpec);
+            final int heightMode = MeasureSpec.getMode(heightMeasureSpec);
+            if (widthMode == MeasureSpec.EXACTLY && heightMode == MeasureSpec.AT_MOST) {
+                height = Math.min(MeasureSpec.getSize(heightMeasureSpec), minHeight * width / minWidth);
+            } else if (widthMode == MeasureSpec.AT_MOST && heightMode == MeasureSpec.EXACTLY) {
+                width = Math.min(MeasureSpec.getSize(widthMeasureSpec), minWidth * height / minHeight);
+            }
+        }
+
+        setMeasuredDimension(width, height);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        final int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN || action == MotionEvent.ACTION_POINTER_DOWN) {
+            // a down event decides whether we get the rest of the gesture, so hit test against the
+            // published hands instead of waiting for the render thread to finish a frame
+            if (action == MotionEvent.ACTION_DOWN)
+                mTouchHandled = false;
+            final float[] points = mHandPoints;
+            final int handIndex = points != null ? ClockView.findHandByLocation(points, event.getX(), event.getY()) : -1;
+            if (handIndex == -1 || mOnHandChangedListener == null || !mOnHandChangedListener.onHandChangeBegin(this, handIndex))
+                return mTouchHandled || super.onTouchEvent(event);
+
+            mTouchHandled = true;
+            requestParentDisallowInterceptTouchEvent(true);
+            final float x = event.getX();
+            final float y = event.getY();
+            runOnRenderThread(new Runnable() {
+                @Override
+                public void run() {
+                    mClock.beginHandDrag(handIndex, x, y);
+                }
+            });
+            return true;
+        }
+
+        if (!mTouchHandled)
+            return super.onTouchEvent(event);
+
+        final MotionEvent copy = MotionEvent.obtain(event);
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mClock.onTouchEvent(copy);
+                copy.recycle();
+            }
+        });
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            requestParentDisallowInterceptTouchEvent(false);
+            mTouchHandled = false;
+        }
+        return true;
+    }
+
+    private void requestParentDisallowInterceptTouchEvent(boolean disallow) {
+        final ViewParent parent = getParent();
+        if (parent != null)
+            parent.requestDisallowInterceptTouchEvent(disallow);
+    }
+
+    public void setAdjustViewBounds(final boolean adjust) {
+        if (mAdjustViewBounds == adjust)
+            return;
+        mAdjustViewBounds = adjust;
+        // same as ClockView.setAdjustViewBounds()
+        if (adjust)
+            mScaleType = ImageView.ScaleType.FIT_CENTER;
+        requestLayout();
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mClock.setAdjustViewBounds(adjust);
+                publishMinimumSize();
+            }
+        });
+    }
+
+    public boolean getAdjustViewBounds() {
+        return mAdjustViewBounds;
+    }
+
+    public void setScaleType(final ImageView.ScaleType scaleType) {
+        mScaleType = scaleType;
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mClock.setScaleType(scaleType);
+            }
+        });
+    }
+
+    public ImageView.ScaleType getScaleType() {
+        return mScaleType;
+    }
+
+    public void setImageMatrix(@Nullable final Matrix matrix) {
+        final Matrix copy = matrix != null ? new Matrix(matrix) : null;
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mClock.setImageMatrix(copy);
+            }
+        });
+    }
+
+    public void setIs24hr(final boolean is24hr) {
+        mIs24hr = is24hr;
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mClock.setIs24hr(is24hr);
+            }
+        });
+    }
+
+    public boolean is24hr() {
+        return mIs24hr;
+    }
+
+    public void setDrawReversed(final boolean reversed) {
+        mDrawReversed = reversed;
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mClock.setDrawReversed(reversed);
+            }
+        });
+    }
+
+    public boolean isDrawReversed() {
+        return mDrawReversed;
+    }
+
+    public void setNumHands(final int n) {
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mClock.setNumHands(n);
+                publishHandValues();
+            }
+        });
+    }
+
+    public void setDialDrawable(@DrawableRes final int drawable) {
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mClock.setDialDrawable(drawable);
+                publishMinimumSize();
+            }
+        });
+    }
+
+    public void setDialDrawable(@Nullable final Drawable drawable) {
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mClock.setDialDrawable(drawable);
+                publishMinimumSize();
+            }
+        });
+    }
+
+    public void setHandDrawable(final int index, @DrawableRes final int drawable) {
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mClock.setHandDrawable(index, drawable);
+            }
+        });
+    }
+
+    public void setHandDrawable(final int index, @Nullable final Drawable drawable) {
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mClock.setHandDrawable(index, drawable);
+            }
+        });
+    }
+
+    public void setHandDrawable(final int index, @DrawableRes final int drawable, final float horizontal_bias, final float vertical_bias) {
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mClock.setHandDrawable(index, drawable, horizontal_bias, vertical_bias);
+            }
+        });
+    }
+
+    public void setHandDrawable(final int index, @Nullable final Drawable drawable, final float horizontal_bias, final float vertical_bias) {
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mClock.setHandDrawable(index, drawable, horizontal_bias, vertical_bias);
+            }
+        });
+    }
+
+    public void setHandShadow(final int index, final float radius, final float dx, final float dy, @ColorInt final int color) {
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mClock.setHandShadow(index, radius, dx, dy, color);
+            }
+        });
+    }
+
+    public void setHandGlow(final int index, final float radius, @ColorInt final int color) {
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mClock.setHandGlow(index, radius, color);
+            }
+        });
+    }
+
+    public void setTime(final long time) {
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mClock.setTime(time);
+            }
+        });
+    }
+
+    public void setTime(final Calendar calendar) {
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mClock.setTime(calendar);
+            }
+        });
+    }
+
+    public float getHandValue(int index) {
+        return mHandValues[index];
+    }
+
+    public void setHour(float value) {
+        setHandValue(ClockView.HAND_HOUR, value, true);
+    }
+
+    public void setMinute(float value) {
+        setHandValue(ClockView.HAND_MINUTE, value, true);
+    }
+
+    public void setSecond(float value) {
+        setHandValue(ClockView.HAND_SECOND, value, true);
+    }
+
+    public void setHandValue(final int index, final float toValue, final boolean animate) {
+        // without a render thread there is no looper to run the animator on
+        final boolean shouldAnimate = animate && mRenderHandler != null;
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mClock.setHandValue(index, toValue, shouldAnimate);
+            }
+        });
+    }
+
+    public void setOnHandChangedListener(@Nullable OnHandChangedListener listener) {
+        mOnHandChangedListener = listener;
+        final boolean forward = listener != null;
+        runOnRenderThread(new Runnable() {
+            @Override
+            public void run() {
+                mClock.setOnHandChangedListener(forward ? mHandChangedForwarder : null);
+            }
+        });
+    }
+
+    /**
+     * Same as {@link ClockView.OnHandChangedListener}, invoked on the UI thread.
+     */
+    public interface OnHandChangedListener {
+        boolean onHandChangeBegin(ClockSurfaceView view, int handIndex);
+
+        void onHandChanged(ClockSurfaceView view, int handIndex, float value, float oldValue);
+
+        void onHandChangeEnd(ClockSurfaceView view, int handIndex);
+    }
+}
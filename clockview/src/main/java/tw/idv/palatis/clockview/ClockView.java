@@ -3,27 +3,38 @@ package tw.idv.palatis.clockview;
 import android.animation.ValueAnimator;
 import android.annotation.TargetApi;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.BlurMaskFilter;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.Paint;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.support.annotation.ColorInt;
 import android.support.annotation.DrawableRes;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.content.res.ResourcesCompat;
+import android.support.v4.os.ConfigurationCompat;
 import android.support.v4.view.MotionEventCompat;
 import android.support.v4.view.NestedScrollingChild;
 import android.support.v4.view.NestedScrollingChildHelper;
 import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.TypedValue;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewParent;
 import android.widget.ImageView;
 
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Locale;
 
 public class ClockView extends View implements NestedScrollingChild {
     private static final String TAG = "ClockView";
@@ -48,6 +59,9 @@ public class ClockView extends View implements NestedScrollingChild {
     private final Matrix mMatrix = new Matrix();
 
     private boolean mIs24hr;
+    private boolean mDialNumerals;
+    // ticks and numerals drawn over whatever the dial is
+    private ClockDialDrawable mDialDecoration;
     private boolean mDrawReversed;
     @DrawableRes
     private int mDialDrawableResId;
@@ -72,6 +86,15 @@ public class ClockView extends View implements NestedScrollingChild {
         public Drawable drawable;
         public ValueAnimator animator = null;
 
+        public float shadowRadius;
+        public float shadowDx;
+        public float shadowDy;
+        @ColorInt
+        public int shadowColor;
+        public Bitmap shadowMask = null;
+        public final int[] shadowMaskOffset = new int[2];
+        public float shadowMaskScale;
+
         public HandOverlay(@DrawableRes int drawableResId, @Nullable Drawable drawable, float value, float division, float startAngle, float horizontal_bias, float vertical_bias, long interval) {
             this.drawableResId = drawableResId;
             this.drawable = drawable;
@@ -105,6 +128,7 @@ public class ClockView extends View implements NestedScrollingChild {
 
     private void init(Context context, @Nullable AttributeSet attrs, int defStyleAttr, int defStyleRes) {
         final Calendar now = Calendar.getInstance();
+        mCalendar = now;
 
         final TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.ClockView, defStyleAttr, defStyleRes);
         try {
@@ -115,14 +139,35 @@ public class ClockView extends View implements NestedScrollingChild {
 
             mIs24hr = a.getBoolean(R.styleable.ClockView_is24hr, false);
             mDrawReversed = a.getBoolean(R.styleable.ClockView_drawReversed, true);
+            final boolean procedural = a.getBoolean(R.styleable.ClockView_procedural, false);
             mDialDrawableResId = a.getResourceId(R.styleable.ClockView_dial, -1);
             mDialDrawable = a.getDrawable(R.styleable.ClockView_dial);
+            final boolean hasTickCount = a.hasValue(R.styleable.ClockView_dial_tickCount);
+            mDialNumerals = a.getBoolean(R.styleable.ClockView_dial_numerals, false);
+            if (hasTickCount || mDialNumerals) {
+                // the major ticks and the numeral text size follow is24hr, see updateDialDecoration()
+                mDialDecoration = new ClockDialDrawable(res);
+                mDialDecoration.setRingWidth(0);
+                mDialDecoration.setTickCount(hasTickCount ? a.getInt(R.styleable.ClockView_dial_tickCount, 12) : 0);
+                if (mDialNumerals)
+                    mDialDecoration.setNumeralInset(dp(res, 18));
+                mDialDecoration.setCallback(this);
+            }
             if (mDialDrawable == null) {
-                mDialDrawableResId = R.drawable.cv_default_dial;
-                mDialDrawable = ResourcesCompat.getDrawable(res, R.drawable.cv_default_dial, theme);
+                if (procedural) {
+                    final ClockDialDrawable dial = new ClockDialDrawable(res);
+                    // only the ring is left, the decoration brings the ticks
+                    if (hasTickCount)
+                        dial.setTickCount(0);
+                    mDialDrawable = dial;
+                } else {
+                    mDialDrawableResId = R.drawable.cv_default_dial;
+                    mDialDrawable = ResourcesCompat.getDrawable(res, R.drawable.cv_default_dial, theme);
+                }
             }
             if (mDialDrawable != null)
                 mDialDrawable.setCallback(this);
+            updateDialDecoration();
 
             final int numHands = a.getInt(R.styleable.ClockView_numHands, 3);
             mHandOverlays = new HandOverlay[numHands];
@@ -138,8 +183,12 @@ public class ClockView extends View implements NestedScrollingChild {
                     a.getInt(R.styleable.ClockView_hand_hour_interval, 3600 * 1000) // updates every 3600 sec
             );
             if (mHandOverlays[HAND_HOUR].drawable == null) {
-                mHandOverlays[HAND_HOUR].drawableResId = R.drawable.cv_default_hand_hour;
-                mHandOverlays[HAND_HOUR].drawable = ResourcesCompat.getDrawable(res, R.drawable.cv_default_hand_hour, theme);
+                if (procedural) {
+                    mHandOverlays[HAND_HOUR].drawable = new ClockHandDrawable(res, 20);
+                } else {
+                    mHandOverlays[HAND_HOUR].drawableResId = R.drawable.cv_default_hand_hour;
+                    mHandOverlays[HAND_HOUR].drawable = ResourcesCompat.getDrawable(res, R.drawable.cv_default_hand_hour, theme);
+                }
             }
             if (mHandOverlays[HAND_HOUR].drawable != null)
                 mHandOverlays[HAND_HOUR].drawable.setCallback(this);
@@ -155,8 +204,12 @@ public class ClockView extends View implements NestedScrollingChild {
                     a.getInt(R.styleable.ClockView_hand_minute_interval, 60 * 1000) // updates every 60 sec
             );
             if (mHandOverlays[HAND_MINUTE].drawable == null) {
-                mHandOverlays[HAND_MINUTE].drawableResId = R.drawable.cv_default_hand_minute;
-                mHandOverlays[HAND_MINUTE].drawable = ResourcesCompat.getDrawable(res, R.drawable.cv_default_hand_minute, theme);
+                if (procedural) {
+                    mHandOverlays[HAND_MINUTE].drawable = new ClockHandDrawable(res, 30);
+                } else {
+                    mHandOverlays[HAND_MINUTE].drawableResId = R.drawable.cv_default_hand_minute;
+                    mHandOverlays[HAND_MINUTE].drawable = ResourcesCompat.getDrawable(res, R.drawable.cv_default_hand_minute, theme);
+                }
             }
             if (mHandOverlays[HAND_MINUTE].drawable != null)
                 mHandOverlays[HAND_MINUTE].drawable.setCallback(this);
@@ -174,7 +227,18 @@ public class ClockView extends View implements NestedScrollingChild {
             if (mHandOverlays[HAND_SECOND].drawable != null)
                 mHandOverlays[HAND_SECOND].drawable.setCallback(this);
 
-            mTouchPoints = new float[6];
+            final float shadowRadius = a.getDimension(R.styleable.ClockView_hand_shadowRadius, 0.0f);
+            final float shadowDx = a.getDimension(R.styleable.ClockView_hand_shadowDx, 0.0f);
+            final float shadowDy = a.getDimension(R.styleable.ClockView_hand_shadowDy, 0.0f);
+            final int shadowColor = a.getColor(R.styleable.ClockView_hand_shadowColor, 0);
+            for (final HandOverlay hand : mHandOverlays) {
+                hand.shadowRadius = shadowRadius;
+                hand.shadowDx = shadowDx;
+                hand.shadowDy = shadowDy;
+                hand.shadowColor = shadowColor;
+            }
+
+            mTouchPoints = new float[numHands << 2];
 
             setScaleTypeInternal(sScaleTypeArray[a.getInteger(R.styleable.ClockView_android_scaleType, 0 /* matrix */)]);
             setAdjustViewBounds(a.getBoolean(R.styleable.ClockView_android_adjustViewBounds, false));
@@ -244,7 +308,7 @@ public class ClockView extends View implements NestedScrollingChild {
                 );
                 matrix.postScale(scale, scale);
                 matrix.postTranslate(contentBound.width() / 2, contentBound.height() / 2);
-                matrix.postTranslate(-dialBound.width() / 2, -dialBound.width() / 2);
+                matrix.postTranslate(-dialBound.width() * scale / 2, -dialBound.height() * scale / 2);
             }
         }
         matrix.postTranslate(getPaddingLeft(), getPaddingTop());
@@ -277,9 +341,86 @@ public class ClockView extends View implements NestedScrollingChild {
         return mCustomMatrix;
     }
 
+    public void setIs24hr(boolean is24hr) {
+        if (mIs24hr != is24hr) {
+            final HandOverlay hour = mHandOverlays[HAND_HOUR];
+            if (hour.division == 360.0f / (mIs24hr ? 24.0f : 12.0f))
+                hour.division = 360.0f / (is24hr ? 24.0f : 12.0f);
+            mIs24hr = is24hr;
+            updateDialDecoration();
+            postInvalidate();
+        }
+    }
+
+    public boolean is24hr() {
+        return mIs24hr;
+    }
+
+    private void updateDialDecoration() {
+        final Locale locale = ConfigurationCompat.getLocales(getResources().getConfiguration()).get(0);
+        if (mDialDrawable instanceof ClockDialDrawable) {
+            final ClockDialDrawable dial = (ClockDialDrawable) mDialDrawable;
+            dial.setIs24hr(mIs24hr);
+            dial.setLocale(locale);
+        }
+        if (mDialDecoration != null) {
+            final int numerals = mIs24hr ? 24 : 12;
+            final int tickCount = mDialDecoration.getTickCount();
+            // a major tick under every numeral that lands on a tick
+            if (tickCount > 0)
+                mDialDecoration.setMajorTickInterval(tickCount / gcd(tickCount, numerals));
+            mDialDecoration.setIs24hr(mIs24hr);
+            mDialDecoration.setLocale(locale);
+            if (mDialNumerals)
+                mDialDecoration.setNumeralTextSize(dp(getResources(), mIs24hr ? 7 : 10));
+            if (mDialDrawable != null) {
+                // centered on the dial, as large as fits
+                final int width = mDialDrawable.getIntrinsicWidth();
+                final int height = mDialDrawable.getIntrinsicHeight();
+                final int size = Math.min(width, height);
+                mDialDecoration.setSize(size);
+                mDialDecoration.setBounds((width - size) / 2, (height - size) / 2, (width + size) / 2, (height + size) / 2);
+            }
+        }
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    @Nullable
+    ClockDialDrawable getDialDecoration() {
+        return mDialDecoration;
+    }
+
+    private static float dp(Resources res, float dp) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp, res.getDisplayMetrics());
+    }
+
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        updateDialDecoration();
+    }
+
+    public void setDrawReversed(boolean reversed) {
+        if (mDrawReversed != reversed) {
+            mDrawReversed = reversed;
+            postInvalidate();
+        }
+    }
+
+    public boolean isDrawReversed() {
+        return mDrawReversed;
+    }
+
+    public int getNumHands() {
+        return mHandOverlays.length;
+    }
+
     public void setNumHands(int n) {
-        if (mTouchPoints == null || mTouchPoints.length != (n << 1))
-            mTouchPoints = new float[n << 1];
+        if (mTouchPoints == null || mTouchPoints.length != (n << 2))
+            mTouchPoints = new float[n << 2];
         final HandOverlay[] newHands = new HandOverlay[n];
         final int count = Math.min(n, mHandOverlays.length);
         System.arraycopy(mHandOverlays, 0, newHands, 0, count);
@@ -309,8 +450,11 @@ public class ClockView extends View implements NestedScrollingChild {
         if (mDialDrawable != drawable) {
             setScaleTypeInternal(mScaleType);
             mDialDrawable = drawable;
-            if (mDialDrawable != null)
+            if (mDialDrawable != null) {
                 mDialDrawable.setCallback(this);
+                mDialDrawable.setVisible(isClockVisible(), false);
+            }
+            updateDialDecoration();
             if (oldDrawable != null && mDialDrawable != null) {
                 if (oldDrawable.getIntrinsicWidth() != mDialDrawable.getIntrinsicWidth() || oldDrawable.getIntrinsicHeight() != mDialDrawable.getIntrinsicHeight()) {
                     requestLayout();
@@ -356,14 +500,58 @@ public class ClockView extends View implements NestedScrollingChild {
     protected void setHandDrawableInternal(HandOverlay hand, @Nullable Drawable drawable, float horizontal_bias, float vertical_bias) {
         if (hand.drawable != null)
             hand.drawable.setCallback(null);
+        recycleShadowMask(hand);
         hand.drawable = drawable;
-        if (hand.drawable != null)
+        if (hand.drawable != null) {
             hand.drawable.setCallback(this);
+            hand.drawable.setVisible(isClockVisible(), false);
+        }
         hand.horizontal_bias = horizontal_bias;
         hand.vertical_bias = vertical_bias;
         postInvalidate();
     }
 
+    /**
+     * Casts a shadow of the hand, offset by ({@code dx}, {@code dy}) in dial coordinates.
+     * <p>
+     * The blurred silhouette of the hand is rendered once into an alpha mask for the current hand
+     * drawable and scale, every frame only rotates and draws that mask. The mask is rendered again
+     * whenever the hand drawable invalidates itself, so an animated hand drawable pays for a new
+     * mask on every frame of its animation.
+     *
+     * @param radius blur radius in dial coordinates.
+     * @param color  shadow color, 0 for no shadow.
+     */
+    public void setHandShadow(int index, float radius, float dx, float dy, @ColorInt int color) {
+        final HandOverlay hand = mHandOverlays[index];
+        if (hand.shadowRadius != radius)
+            recycleShadowMask(hand);
+        hand.shadowRadius = radius;
+        hand.shadowDx = dx;
+        hand.shadowDy = dy;
+        hand.shadowColor = color;
+        postInvalidate();
+    }
+
+    /**
+     * A glow is a shadow right under the hand, see {@link #setHandShadow(int, float, float, float, int)}.
+     */
+    public void setHandGlow(int index, float radius, @ColorInt int color) {
+        setHandShadow(index, radius, 0.0f, 0.0f, color);
+    }
+
+    @Nullable
+    Bitmap getHandShadowMask(int index) {
+        return mHandOverlays[index].shadowMask;
+    }
+
+    private void recycleShadowMask(HandOverlay hand) {
+        if (hand.shadowMask != null) {
+            hand.shadowMask.recycle();
+            hand.shadowMask = null;
+        }
+    }
+
     public void setTime(long time) {
         mCalendar.setTimeInMillis(time);
         postInvalidate();
@@ -374,6 +562,103 @@ public class ClockView extends View implements NestedScrollingChild {
         postInvalidate();
     }
 
+    @Override
+    protected boolean verifyDrawable(@NonNull Drawable who) {
+        return who == mDialDrawable || who == mDialDecoration || findHandByDrawable(who) != null || super.verifyDrawable(who);
+    }
+
+    @Nullable
+    private HandOverlay findHandByDrawable(Drawable drawable) {
+        for (final HandOverlay hand : mHandOverlays)
+            if (hand.drawable == drawable)
+                return hand;
+        return null;
+    }
+
+    private final Matrix mDirtyMatrix = new Matrix();
+    private final RectF mDirtyRect = new RectF();
+
+    @Override
+    public void invalidateDrawable(@NonNull Drawable drawable) {
+        // only repaint the area the drawable covers on screen, mapped the same way onDraw() does
+        mDirtyMatrix.set(mMatrix);
+        if (drawable != mDialDrawable && drawable != mDialDecoration) {
+            final HandOverlay hand = findHandByDrawable(drawable);
+            if (hand == null) {
+                super.invalidateDrawable(drawable);
+                return;
+            }
+            if (mDialDrawable == null)
+                return;
+            if ((hand.shadowColor >>> 24) != 0) {
+                // the content changed, so does the silhouette, and the shadow reaches past the dirty bounds
+                recycleShadowMask(hand);
+                invalidate();
+                return;
+            }
+            mDirtyMatrix.preTranslate(mDialDrawable.getIntrinsicWidth() * hand.horizontal_bias, mDialDrawable.getIntrinsicHeight() * hand.vertical_bias);
+            mDirtyMatrix.preRotate(hand.value * hand.division);
+            mDirtyMatrix.preTranslate(-drawable.getIntrinsicWidth() / 2.0f, -drawable.getIntrinsicHeight() / 2.0f);
+        }
+
+        mDirtyRect.set(drawable.getDirtyBounds());
+        mDirtyMatrix.mapRect(mDirtyRect);
+        // one extra pixel around for anti-aliased edges
+        invalidate(
+                (int) Math.floor(mDirtyRect.left) - 1,
+                (int) Math.floor(mDirtyRect.top) - 1,
+                (int) Math.ceil(mDirtyRect.right) + 1,
+                (int) Math.ceil(mDirtyRect.bottom) + 1
+        );
+    }
+
+    private boolean mAttached = false;
+
+    /**
+     * @return whether the clock can currently be seen, the dial and hand drawables are told to
+     * pause their animations otherwise.
+     */
+    protected boolean isClockVisible() {
+        return mAttached && getWindowVisibility() == VISIBLE && isShown();
+    }
+
+    protected void updateDrawableVisibility(boolean visible) {
+        if (mDialDrawable != null)
+            mDialDrawable.setVisible(visible, false);
+        for (final HandOverlay hand : mHandOverlays)
+            if (hand.drawable != null)
+                hand.drawable.setVisible(visible, false);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mAttached = true;
+        updateDrawableVisibility(isClockVisible());
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        // the view hierarchy is being torn down, don't ask it
+        mAttached = false;
+        updateDrawableVisibility(false);
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onVisibilityChanged(@NonNull View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        // called from the View constructor, before our fields are set up
+        if (mHandOverlays != null)
+            updateDrawableVisibility(visibility == VISIBLE && isClockVisible());
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateDrawableVisibility(visibility == VISIBLE && mAttached && isShown());
+    }
+
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
         if (w != oldw || h != oldh) {
@@ -390,25 +675,33 @@ public class ClockView extends View implements NestedScrollingChild {
 
         canvas.save();
         canvas.concat(mMatrix);
+        final float scale = mMatrix.mapRadius(1.0f);
 
         mDialDrawable.setBounds(0, 0, mDialDrawable.getIntrinsicWidth(), mDialDrawable.getIntrinsicHeight());
         mDialDrawable.draw(canvas);
+        if (mDialDecoration != null)
+            mDialDecoration.draw(canvas);
 
         if (mDrawReversed) {
             for (int i = mHandOverlays.length - 1; i >= 0; --i)
-                drawHand(canvas, mDialDrawable, mHandOverlays[i]);
+                drawHand(canvas, mDialDrawable, mHandOverlays[i], scale);
         } else {
             for (final HandOverlay hand : mHandOverlays)
-                drawHand(canvas, mDialDrawable, hand);
+                drawHand(canvas, mDialDrawable, hand, scale);
         }
 
         canvas.restore();
     }
 
-    private void drawHand(Canvas canvas, Drawable dial, HandOverlay hand) {
+    private final Paint mShadowPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+
+    private void drawHand(Canvas canvas, Drawable dial, HandOverlay hand, float scale) {
         if (hand.drawable == null)
             return;
 
+        if ((hand.shadowColor >>> 24) != 0)
+            drawHandShadow(canvas, dial, hand, scale);
+
         canvas.save();
         canvas.translate(dial.getIntrinsicWidth() * hand.horizontal_bias, dial.getIntrinsicHeight() * hand.vertical_bias);
         canvas.rotate(hand.value * hand.division);
@@ -418,6 +711,46 @@ public class ClockView extends View implements NestedScrollingChild {
         canvas.restore();
     }
 
+    private void drawHandShadow(Canvas canvas, Drawable dial, HandOverlay hand, float scale) {
+        if (hand.shadowMask == null || hand.shadowMaskScale != scale) {
+            recycleShadowMask(hand);
+            hand.shadowMask = createShadowMask(hand.drawable, hand.shadowRadius * scale, scale, hand.shadowMaskOffset);
+            hand.shadowMaskScale = scale;
+        }
+        if (hand.shadowMask == null)
+            return;
+
+        canvas.save();
+        canvas.translate(dial.getIntrinsicWidth() * hand.horizontal_bias + hand.shadowDx, dial.getIntrinsicHeight() * hand.vertical_bias + hand.shadowDy);
+        canvas.rotate(hand.value * hand.division);
+        canvas.translate(-hand.drawable.getIntrinsicWidth() / 2.0f, -hand.drawable.getIntrinsicHeight() / 2.0f);
+        canvas.scale(1.0f / scale, 1.0f / scale);
+        mShadowPaint.setColor(hand.shadowColor);
+        canvas.drawBitmap(hand.shadowMask, hand.shadowMaskOffset[0], hand.shadowMaskOffset[1], mShadowPaint);
+        canvas.restore();
+    }
+
+    @Nullable
+    private static Bitmap createShadowMask(Drawable drawable, float blurRadius, float scale, int[] offset) {
+        final int width = (int) Math.ceil(drawable.getIntrinsicWidth() * scale);
+        final int height = (int) Math.ceil(drawable.getIntrinsicHeight() * scale);
+        if (width <= 0 || height <= 0)
+            return null;
+
+        final Bitmap silhouette = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(silhouette);
+        canvas.scale(scale, scale);
+        drawable.setBounds(0, 0, drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
+        drawable.draw(canvas);
+
+        final Paint paint = new Paint();
+        if (blurRadius > 0)
+            paint.setMaskFilter(new BlurMaskFilter(blurRadius, BlurMaskFilter.Blur.NORMAL));
+        final Bitmap mask = silhouette.extractAlpha(paint, offset);
+        silhouette.recycle();
+        return mask;
+    }
+
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         final int widthMode = MeasureSpec.getMode(widthMeasureSpec);
         final int widthSize = MeasureSpec.getSize(widthMeasureSpec);
@@ -515,7 +848,7 @@ public class ClockView extends View implements NestedScrollingChild {
                         shouldHandle = mOnHandChangedListener.onHandChangeBegin(this, mHandIndex);
                     }
                     if (shouldHandle) {
-                        getParent().requestDisallowInterceptTouchEvent(true);
+                        requestParentDisallowInterceptTouchEvent(true);
                         Log.d(TAG, "onTouchEvent(): starting with index = " + mHandIndex);
                         return true;
                     } else {
@@ -539,7 +872,7 @@ public class ClockView extends View implements NestedScrollingChild {
             case MotionEvent.ACTION_CANCEL:
                 if (mOnHandChangedListener != null && mNestedChildHelper.isNestedScrollingEnabled()) {
                     mOnHandChangedListener.onHandChangeEnd(this, mHandIndex);
-                    getParent().requestDisallowInterceptTouchEvent(false);
+                    requestParentDisallowInterceptTouchEvent(false);
                 }
                 mHandIndex = -1;
                 return true;
@@ -547,6 +880,13 @@ public class ClockView extends View implements NestedScrollingChild {
         return superResult;
     }
 
+    private void requestParentDisallowInterceptTouchEvent(boolean disallow) {
+        // a ClockView rendered off-screen by ClockSurfaceView has no parent
+        final ViewParent parent = getParent();
+        if (parent != null)
+            parent.requestDisallowInterceptTouchEvent(disallow);
+    }
+
     private final float[] mDragHandCenter = new float[2];
 
     private void handleHandDrag(int index, float oldX, float oldY, float newX, float newY) {
@@ -568,47 +908,74 @@ public class ClockView extends View implements NestedScrollingChild {
     }
 
     private int getHandByLocation(float x, float y) {
-        // dial center
+        getHandPoints(mTouchPoints);
+        final int index = findHandByLocation(mTouchPoints, x, y);
+        if (index != -1)
+            updateDragHandCenter(index);
+        return index;
+    }
+
+    /**
+     * Writes the tip and then the pivot of every hand in view coordinates into {@code points}, 4
+     * floats per hand, NaN for the hands without a drawable.
+     */
+    void getHandPoints(float[] points) {
         final float dialWidth = getDialWidth();
         final float dialHeight = getDialHeight();
-        if (dialWidth == 0 || dialHeight == 0)
-            return -1;
-
-        // collect tip position
         for (int i = 0; i < mHandOverlays.length; ++i) {
             final HandOverlay hand = mHandOverlays[i];
-            if (hand.drawable == null)
+            final int offset = i << 2;
+            if (hand.drawable == null || dialWidth == 0 || dialHeight == 0) {
+                Arrays.fill(points, offset, offset + 4, Float.NaN);
                 continue;
+            }
             final float handSize = hand.drawable.getIntrinsicHeight() / 2.0f;
             final float handAngle = (float) Math.toRadians(hand.value * hand.division - hand.startAngle);
-            mTouchPoints[i << 1] = (float) (dialWidth * hand.horizontal_bias + Math.cos(handAngle) * handSize);
-            mTouchPoints[(i << 1) + 1] = (float) (dialHeight * hand.vertical_bias + Math.sin(handAngle) * handSize);
+            points[offset + 2] = dialWidth * hand.horizontal_bias;
+            points[offset + 3] = dialHeight * hand.vertical_bias;
+            points[offset] = (float) (points[offset + 2] + Math.cos(handAngle) * handSize);
+            points[offset + 1] = (float) (points[offset + 3] + Math.sin(handAngle) * handSize);
         }
+        mMatrix.mapPoints(points, 0, points, 0, mHandOverlays.length << 1);
+    }
 
-        // Log.d(TAG, "getHandByLocation(): touch = (" + x + ", " + y + "), size = (" + getWidth() + ", " + getHeight() + ")");
-        // Log.d(TAG, "getHandByLocation(): points before = " + Arrays.toString(mTouchPoints));
-        mMatrix.mapPoints(mTouchPoints);
-        // Log.d(TAG, "getHandByLocation():  points after = " + Arrays.toString(mTouchPoints));
-
-        // find hand by distance
+    /**
+     * @param points as filled by {@link #getHandPoints(float[])}.
+     * @return the hand whose tip is closest to ({@code x}, {@code y}), -1 for none.
+     */
+    static int findHandByLocation(float[] points, float x, float y) {
         int index = -1;
         float minDistance = Float.POSITIVE_INFINITY;
-        for (int i = 0; i < mHandOverlays.length; ++i) {
-            final HandOverlay hand = mHandOverlays[i];
-            if (hand.drawable == null)
+        for (int i = 0; i < points.length >> 2; ++i) {
+            if (Float.isNaN(points[i << 2]))
                 continue;
-            float distance = (float) Math.hypot(x - mTouchPoints[i << 1], y - mTouchPoints[(i << 1) + 1]);
-            // Log.d(TAG, "getHandByLocation(): hand " + i + " - distance = " + distance);
+            final float distance = (float) Math.hypot(x - points[i << 2], y - points[(i << 2) + 1]);
             if (minDistance > distance) {
                 minDistance = distance;
                 index = i;
             }
         }
+        return index;
+    }
 
-        mDragHandCenter[0] = dialWidth * mHandOverlays[index].horizontal_bias;
-        mDragHandCenter[1] = dialHeight * mHandOverlays[index].vertical_bias;
+    /**
+     * Starts dragging a hand picked by {@link #findHandByLocation(float[], float, float)} elsewhere,
+     * without asking the {@link OnHandChangedListener}, the following events go through
+     * {@link #onTouchEvent(MotionEvent)} as usual.
+     */
+    void beginHandDrag(int index, float x, float y) {
+        if (index >= mHandOverlays.length)
+            return;
+        mLastTouchX = x;
+        mLastTouchY = y;
+        mHandIndex = index;
+        updateDragHandCenter(index);
+    }
+
+    private void updateDragHandCenter(int index) {
+        mDragHandCenter[0] = getDialWidth() * mHandOverlays[index].horizontal_bias;
+        mDragHandCenter[1] = getDialHeight() * mHandOverlays[index].vertical_bias;
         mMatrix.mapPoints(mDragHandCenter);
-        return index;
     }
 
     public float getHandValue(int index) {
@@ -630,6 +997,9 @@ public class ClockView extends View implements NestedScrollingChild {
     public void setHandValue(int index, float toValue, boolean animate) {
         final HandOverlay hand = mHandOverlays[index];
         if (!animate) {
+            // a running animation would overwrite the value on its next frame
+            if (hand.animator != null)
+                hand.animator.cancel();
             if (hand.value != toValue) {
                 hand.value = toValue;
                 postInvalidateOnAnimation();
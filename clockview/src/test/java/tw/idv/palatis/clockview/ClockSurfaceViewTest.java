@@ -0,0 +1,287 @@
+package tw.idv.palatis.clockview;
+
+import android.app.Activity;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.ShapeDrawable;
+import android.graphics.drawable.shapes.RectShape;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that {@link ClockSurfaceView} forwards its API to the off-screen {@link ClockView} on the
+ * render thread, hands touches and listener callbacks back and forth between the threads, and
+ * follows the surface lifecycle.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class ClockSurfaceViewTest {
+    private static final int SIZE = 200;
+
+    private FrameLayout mContainer;
+    private ClockSurfaceView mView;
+
+    @Before
+    public void setUp() {
+        final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        mContainer = new FrameLayout(activity);
+        activity.setContentView(mContainer);
+
+        // leave the hour hand as the only one, so every touch picks it
+        mView = new ClockSurfaceView(activity);
+        mView.setHandDrawable(ClockView.HAND_MINUTE, (Drawable) null);
+        mView.setHandDrawable(ClockView.HAND_SECOND, (Drawable) null);
+        mView.setHandValue(ClockView.HAND_HOUR, 0.0f, false);
+    }
+
+    @Test
+    public void detached_appliesDirectly() {
+        assertNull(mView.getRenderLooper());
+        mView.setHandValue(ClockView.HAND_HOUR, 3.0f, true);
+        assertEquals(3.0f, mView.getClockView().getHandValue(ClockView.HAND_HOUR), 0.0f);
+        assertEquals(3.0f, mView.getHandValue(ClockView.HAND_HOUR), 0.0f);
+    }
+
+    @Test
+    public void setters_forwardToRenderThread() {
+        attach(SIZE, SIZE);
+        mView.setAdjustViewBounds(true);
+        mView.setScaleType(ImageView.ScaleType.FIT_START);
+        mView.setIs24hr(true);
+        mView.setDrawReversed(false);
+        mView.setHandValue(ClockView.HAND_HOUR, 7.0f, false);
+
+        // the getters answer from the UI thread right away
+        assertEquals(ImageView.ScaleType.FIT_START, mView.getScaleType());
+        assertTrue(mView.getAdjustViewBounds());
+        assertTrue(mView.is24hr());
+        assertFalse(mView.isDrawReversed());
+
+        idleRenderThread();
+        final ClockView clock = mView.getClockView();
+        assertEquals(ImageView.ScaleType.FIT_START, clock.getScaleType());
+        assertTrue(clock.getAdjustViewBounds());
+        assertTrue(clock.is24hr());
+        assertFalse(clock.isDrawReversed());
+        assertEquals(7.0f, clock.getHandValue(ClockView.HAND_HOUR), 0.0f);
+        assertEquals(7.0f, mView.getHandValue(ClockView.HAND_HOUR), 0.0f);
+    }
+
+    @Test
+    public void setNumHands_publishesHandValues() {
+        attach(SIZE, SIZE);
+        mView.setNumHands(4);
+        idleRenderThread();
+        assertEquals(4, mView.getClockView().getNumHands());
+        assertEquals(0.0f, mView.getHandValue(3), 0.0f);
+
+        mView.setNumHands(2);
+        idleRenderThread();
+        try {
+            mView.getHandValue(2);
+            throw new AssertionError("hand 2 should be gone");
+        } catch (ArrayIndexOutOfBoundsException ignored) {
+        }
+    }
+
+    @Test
+    public void setDialDrawable_measuresTheNewDial() {
+        attach(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+        final ShapeDrawable dial = new ShapeDrawable(new RectShape());
+        dial.setIntrinsicWidth(150);
+        dial.setIntrinsicHeight(120);
+        mView.setDialDrawable(dial);
+
+        idleRenderThread();
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(150, mView.getMeasuredWidth());
+        assertEquals(120, mView.getMeasuredHeight());
+    }
+
+    @Test
+    public void setAdjustViewBounds_measuresTheDialAspect() {
+        attach(300, ViewGroup.LayoutParams.WRAP_CONTENT);
+        final ShapeDrawable dial = new ShapeDrawable(new RectShape());
+        dial.setIntrinsicWidth(150);
+        dial.setIntrinsicHeight(120);
+        mView.setDialDrawable(dial);
+        mView.setAdjustViewBounds(true);
+
+        idleRenderThread();
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(300, mView.getMeasuredWidth());
+        assertEquals(240, mView.getMeasuredHeight());
+
+        mView.setAdjustViewBounds(false);
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(120, mView.getMeasuredHeight());
+    }
+
+    @Test
+    public void touch_handsCallbacksToUiThread() {
+        attach(SIZE, SIZE);
+        final RecordingListener listener = new RecordingListener(true);
+        mView.setOnHandChangedListener(listener);
+
+        final long downTime = SystemClock.uptimeMillis();
+        assertTrue(mView.onTouchEvent(obtain(downTime, MotionEvent.ACTION_DOWN, 100, 50)));
+        assertEquals("begin 0", listener.calls.get(0));
+
+        assertTrue(mView.onTouchEvent(obtain(downTime, MotionEvent.ACTION_MOVE, 150, 100)));
+        assertTrue(mView.onTouchEvent(obtain(downTime, MotionEvent.ACTION_UP, 150, 100)));
+        idleRenderThread();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(3, listener.calls.size());
+        assertTrue(listener.calls.get(1), listener.calls.get(1).startsWith("changed 0"));
+        assertEquals("end 0", listener.calls.get(2));
+        assertTrue(mView.getHandValue(ClockView.HAND_HOUR) > 0.0f);
+    }
+
+    @Test
+    public void touch_doesNotWaitForRenderThread() throws InterruptedException {
+        attach(SIZE, SIZE);
+        final RecordingListener listener = new RecordingListener(true);
+        mView.setOnHandChangedListener(listener);
+
+        // keep the render thread busy, as if it was waiting for a frame to be posted
+        final CountDownLatch touched = new CountDownLatch(1);
+        final boolean[] released = new boolean[1];
+        new Handler(mView.getRenderLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    released[0] = touched.await(2, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        final long downTime = SystemClock.uptimeMillis();
+        assertTrue(mView.onTouchEvent(obtain(downTime, MotionEvent.ACTION_DOWN, 100, 50)));
+        touched.countDown();
+        assertEquals("begin 0", listener.calls.get(0));
+
+        assertTrue(mView.onTouchEvent(obtain(downTime, MotionEvent.ACTION_MOVE, 150, 100)));
+        idleRenderThread();
+        assertTrue("the down event waited for the render thread", released[0]);
+        assertTrue(mView.getHandValue(ClockView.HAND_HOUR) > 0.0f);
+    }
+
+    @Test
+    public void touch_rejectedByListener() {
+        attach(SIZE, SIZE);
+        final RecordingListener listener = new RecordingListener(false);
+        mView.setOnHandChangedListener(listener);
+
+        final long downTime = SystemClock.uptimeMillis();
+        assertFalse(mView.onTouchEvent(obtain(downTime, MotionEvent.ACTION_DOWN, 100, 50)));
+        assertFalse(mView.onTouchEvent(obtain(downTime, MotionEvent.ACTION_MOVE, 150, 100)));
+        assertFalse(mView.onTouchEvent(obtain(downTime, MotionEvent.ACTION_UP, 150, 100)));
+        idleRenderThread();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(1, listener.calls.size());
+        assertEquals("begin 0", listener.calls.get(0));
+        assertEquals(0.0f, mView.getHandValue(ClockView.HAND_HOUR), 0.0f);
+    }
+
+    @Test
+    public void surfaceLifecycle_pausesDrawablesAndStopsThread() {
+        final ShapeDrawable dial = new ShapeDrawable(new RectShape());
+        dial.setIntrinsicWidth(100);
+        dial.setIntrinsicHeight(100);
+        mView.setDialDrawable(dial);
+        assertFalse("no surface yet", dial.isVisible());
+
+        attach(SIZE, SIZE);
+        assertNotNull(mView.getRenderLooper());
+        assertTrue(dial.isVisible());
+
+        mView.surfaceDestroyed(mView.getHolder());
+        assertFalse(dial.isVisible());
+
+        mView.surfaceChanged(mView.getHolder(), PixelFormat.RGBA_8888, SIZE, SIZE);
+        idleRenderThread();
+        assertTrue(dial.isVisible());
+
+        mContainer.removeView(mView);
+        assertNull(mView.getRenderLooper());
+        mView.setHandValue(ClockView.HAND_HOUR, 5.0f, true);
+        assertEquals(5.0f, mView.getHandValue(ClockView.HAND_HOUR), 0.0f);
+    }
+
+    private void attach(int width, int height) {
+        mContainer.addView(mView, new FrameLayout.LayoutParams(width, height));
+        shadowOf(Looper.getMainLooper()).idle();
+        // the fake surface holder never calls back, so play the part of the window manager
+        mView.surfaceCreated(mView.getHolder());
+        mView.surfaceChanged(mView.getHolder(), PixelFormat.RGBA_8888, mView.getWidth(), mView.getHeight());
+        idleRenderThread();
+    }
+
+    private void idleRenderThread() {
+        shadowOf(mView.getRenderLooper()).idle();
+    }
+
+    private static MotionEvent obtain(long downTime, int action, float x, float y) {
+        return MotionEvent.obtain(downTime, SystemClock.uptimeMillis(), action, x, y, 0);
+    }
+
+    private class RecordingListener implements ClockSurfaceView.OnHandChangedListener {
+        final List<String> calls = new ArrayList<>();
+        private final boolean mAccept;
+
+        RecordingListener(boolean accept) {
+            mAccept = accept;
+        }
+
+        private void record(ClockSurfaceView view, String call) {
+            assertSame(Looper.getMainLooper(), Looper.myLooper());
+            assertSame(mView, view);
+            calls.add(call);
+        }
+
+        @Override
+        public boolean onHandChangeBegin(ClockSurfaceView view, int handIndex) {
+            record(view, "begin " + handIndex);
+            return mAccept;
+        }
+
+        @Override
+        public void onHandChanged(ClockSurfaceView view, int handIndex, float value, float oldValue) {
+            record(view, "changed " + handIndex + " " + value);
+        }
+
+        @Override
+        public void onHandChangeEnd(ClockSurfaceView view, int handIndex) {
+            record(view, "end " + handIndex);
+        }
+    }
+}
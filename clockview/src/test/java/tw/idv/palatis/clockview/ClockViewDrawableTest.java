@@ -0,0 +1,171 @@
+package tw.idv.palatis.clockview;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.ShapeDrawable;
+import android.graphics.drawable.shapes.OvalShape;
+import android.view.View;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how {@link ClockView} looks after its dial and hand drawables: the dial decoration, the
+ * cached hand shadow masks, and pausing the drawables while the clock can't be seen.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+@Config(sdk = 33)
+public class ClockViewDrawableTest {
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.getApplication();
+    }
+
+    @Test
+    public void dialDecoration_followsIs24hrAndOutlivesTheDial() {
+        final ClockView view = new ClockView(mContext, Robolectric.buildAttributeSet()
+                .addAttribute(R.attr.dial_tickCount, "48")
+                .addAttribute(R.attr.dial_numerals, "true")
+                .build());
+        final ClockDialDrawable decoration = view.getDialDecoration();
+        assertNotNull("the decoration goes over the default dial too", decoration);
+        assertEquals(4, decoration.getMajorTickInterval());
+        assertTrue(decoration.getNumeralTextSize() > 0);
+
+        view.setIs24hr(true);
+        assertEquals("a major tick under every numeral", 2, decoration.getMajorTickInterval());
+        assertTrue(decoration.is24hr());
+
+        final ShapeDrawable dial = new ShapeDrawable(new OvalShape());
+        dial.setIntrinsicWidth(160);
+        dial.setIntrinsicHeight(120);
+        view.setDialDrawable(dial);
+        assertSame(decoration, view.getDialDecoration());
+        assertEquals("centered on the new dial", 120, decoration.getIntrinsicWidth());
+        assertEquals(20, decoration.getBounds().left);
+        assertTrue(decoration.getNumeralTextSize() > 0);
+    }
+
+    @Test
+    public void shadowMask_builtOnceAcrossFrames() {
+        final ClockView view = createClockView();
+        view.setHandShadow(ClockView.HAND_HOUR, 4.0f, 2.0f, 2.0f, Color.BLUE);
+        render(view, 200, 200);
+        final Bitmap mask = view.getHandShadowMask(ClockView.HAND_HOUR);
+        assertNotNull(mask);
+
+        render(view, 200, 200);
+        view.setHandValue(ClockView.HAND_HOUR, 4.0f, false);
+        render(view, 200, 200);
+        assertSame("moving the hand only rotates the mask", mask, view.getHandShadowMask(ClockView.HAND_HOUR));
+    }
+
+    @Test
+    public void shadowMask_rebuiltOnScaleChange() {
+        final ClockView view = createClockView();
+        view.setHandGlow(ClockView.HAND_HOUR, 4.0f, Color.BLUE);
+        render(view, 200, 200);
+        final Bitmap mask = view.getHandShadowMask(ClockView.HAND_HOUR);
+
+        render(view, 300, 300);
+        assertRebuilt(mask, view.getHandShadowMask(ClockView.HAND_HOUR));
+    }
+
+    @Test
+    public void shadowMask_rebuiltOnDrawableChange() {
+        final ClockView view = createClockView();
+        view.setHandShadow(ClockView.HAND_HOUR, 4.0f, 2.0f, 2.0f, Color.BLUE);
+        render(view, 200, 200);
+        Bitmap mask = view.getHandShadowMask(ClockView.HAND_HOUR);
+
+        final ClockHandDrawable hand = new ClockHandDrawable(mContext.getResources(), 25);
+        view.setHandDrawable(ClockView.HAND_HOUR, hand);
+        render(view, 200, 200);
+        assertRebuilt(mask, view.getHandShadowMask(ClockView.HAND_HOUR));
+
+        // a drawable that changes its content invalidates itself, and the mask follows
+        mask = view.getHandShadowMask(ClockView.HAND_HOUR);
+        hand.setWidth(8.0f);
+        render(view, 200, 200);
+        assertRebuilt(mask, view.getHandShadowMask(ClockView.HAND_HOUR));
+    }
+
+    @Test
+    public void visibility_followsViewAndWindow() {
+        final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        final FrameLayout container = new FrameLayout(activity);
+        activity.setContentView(container);
+
+        final ClockView view = new ClockView(activity);
+        final ClockHandDrawable hand = new ClockHandDrawable(activity.getResources(), 25);
+        view.setHandDrawable(ClockView.HAND_HOUR, hand);
+        assertFalse("not attached yet", hand.isVisible());
+
+        container.addView(view);
+        assertTrue(hand.isVisible());
+
+        view.setVisibility(View.GONE);
+        assertFalse("gone", hand.isVisible());
+        view.setVisibility(View.VISIBLE);
+        assertTrue(hand.isVisible());
+
+        container.setVisibility(View.INVISIBLE);
+        assertFalse("parent invisible", hand.isVisible());
+        container.setVisibility(View.VISIBLE);
+        assertTrue(hand.isVisible());
+
+        view.dispatchWindowVisibilityChanged(View.GONE);
+        assertFalse("window gone", hand.isVisible());
+        view.dispatchWindowVisibilityChanged(View.VISIBLE);
+        assertTrue(hand.isVisible());
+
+        container.removeView(view);
+        assertFalse("detached", hand.isVisible());
+    }
+
+    private static void assertRebuilt(Bitmap oldMask, Bitmap newMask) {
+        assertNotNull(newMask);
+        assertNotSame(oldMask, newMask);
+        assertTrue("the old mask is recycled", oldMask.isRecycled());
+    }
+
+    private ClockView createClockView() {
+        final ClockView view = new ClockView(mContext);
+        view.setScaleType(ImageView.ScaleType.FIT_CENTER);
+        view.setHandValue(ClockView.HAND_HOUR, 2.0f, false);
+        return view;
+    }
+
+    private static Bitmap render(ClockView view, int width, int height) {
+        view.measure(
+                View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY)
+        );
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        view.draw(new Canvas(bitmap));
+        return bitmap;
+    }
+}
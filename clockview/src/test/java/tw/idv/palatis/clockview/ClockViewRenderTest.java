@@ -0,0 +1,452 @@
+package tw.idv.palatis.clockview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.ShapeDrawable;
+import android.graphics.drawable.shapes.RectShape;
+import android.util.AttributeSet;
+import android.view.View;
+import android.widget.ImageView;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Renders {@link ClockView} into software bitmaps with Robolectric native graphics, diffs the
+ * result against the golden images in {@code src/test/resources/golden} and records how long a
+ * frame takes for every face / scale type / adjustViewBounds / drawReversed / pivot combination.
+ * It also checks that an invalidated hand repaints the area it is drawn to.
+ * <p>
+ * A missing golden image fails the test. Run {@code ./gradlew :clockview:test -PrecordGoldens} to
+ * (re-)record them, and {@code -PrenderBudgetMs=n} to change the per-frame budget. Only recording
+ * writes into the source tree, mismatches are written to {@code build/reports/render}.
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+@Config(sdk = 33)
+public class ClockViewRenderTest {
+    private static final int VIEW_WIDTH = 300;
+    private static final int VIEW_HEIGHT = 200;
+    // with adjustViewBounds the height is only capped, and high enough for the dial's aspect ratio to win
+    private static final int VIEW_MAX_HEIGHT = 400;
+
+    private static final int WARMUP_FRAMES = 5;
+    private static final int TIMED_FRAMES = 50;
+
+    private static final int CHANNEL_TOLERANCE = 2;
+    private static final float MAX_MISMATCH_RATIO = 0.001f;
+    // the dirty rect rounds outwards and adds a pixel for the anti-aliased edges
+    private static final int DIRTY_SLACK = 3;
+
+    private static final File GOLDEN_DIR = new File("src/test/resources/golden");
+    private static final boolean RECORD = Boolean.getBoolean("clockview.recordGoldens");
+    private static final float BUDGET_MS = Float.parseFloat(System.getProperty("clockview.renderBudgetMs", "16"));
+    private static final File REPORT_DIR = new File(System.getProperty("clockview.reportDir", "build/reports/render"));
+
+    private static final List<String> sTimings = new ArrayList<>();
+
+    private enum Face {
+        /** the default layer-list dial and hands */
+        XML,
+        /** the {@code procedural} ClockDialDrawable / ClockHandDrawable defaults */
+        PROCEDURAL,
+        /** a procedural 60 tick dial with 12 numerals */
+        NUMERALS_12H,
+        /** a procedural 48 tick dial inflated as 12 hour and switched to 24 hour afterwards */
+        NUMERALS_24H,
+        /** 12 numerals over the default layer-list dial */
+        NUMERALS_XML,
+        /** the default hands casting an offset shadow */
+        SHADOW,
+        /** the procedural hands glowing */
+        GLOW,
+    }
+
+    private final Face mFace;
+    private final ImageView.ScaleType mScaleType;
+    private final boolean mAdjustViewBounds;
+    private final boolean mDrawReversed;
+    private final float mPivot;
+
+    private Context mContext;
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "{0}_{1}_adjust={2}_reversed={3}_pivot={4}")
+    public static Collection<Object[]> parameters() {
+        final List<Object[]> params = new ArrayList<>();
+        final float[] pivots = {0.5f, 0.35f};
+        for (final Face face : new Face[]{Face.XML, Face.PROCEDURAL}) {
+            addMatrix(params, face, ImageView.ScaleType.values(), new boolean[]{false}, pivots);
+            // adjustViewBounds forces FIT_CENTER, any other scale type would render the same
+            addMatrix(params, face, new ImageView.ScaleType[]{ImageView.ScaleType.FIT_CENTER}, new boolean[]{true}, pivots);
+        }
+
+        // the decorations only need a scaled and an unscaled dial
+        final ImageView.ScaleType[] scaleTypes = {ImageView.ScaleType.FIT_CENTER, ImageView.ScaleType.CENTER};
+        for (final Face face : new Face[]{Face.NUMERALS_12H, Face.NUMERALS_24H, Face.NUMERALS_XML, Face.SHADOW, Face.GLOW})
+            addMatrix(params, face, scaleTypes, new boolean[]{false}, new float[]{0.5f});
+        return params;
+    }
+
+    private static void addMatrix(List<Object[]> params, Face face, ImageView.ScaleType[] scaleTypes, boolean[] adjustViewBounds, float[] pivots) {
+        for (final ImageView.ScaleType scaleType : scaleTypes)
+            for (final boolean adjust : adjustViewBounds)
+                for (final boolean drawReversed : new boolean[]{false, true})
+                    for (final float pivot : pivots)
+                        params.add(new Object[]{face, scaleType, adjust, drawReversed, pivot});
+    }
+
+    public ClockViewRenderTest(Face face, ImageView.ScaleType scaleType, boolean adjustViewBounds, boolean drawReversed, float pivot) {
+        mFace = face;
+        mScaleType = scaleType;
+        mAdjustViewBounds = adjustViewBounds;
+        mDrawReversed = drawReversed;
+        mPivot = pivot;
+    }
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.getApplication();
+    }
+
+    @AfterClass
+    public static void writeReport() throws IOException {
+        if (!REPORT_DIR.isDirectory() && !REPORT_DIR.mkdirs())
+            throw new IOException("unable to create " + REPORT_DIR);
+        try (PrintWriter writer = new PrintWriter(new File(REPORT_DIR, "render-times.csv"), "UTF-8")) {
+            writer.println("configuration,median_ms,p90_ms,max_ms,budget_ms");
+            for (final String line : sTimings)
+                writer.println(line);
+        }
+    }
+
+    @Test
+    public void render_matchesGolden() throws IOException {
+        final ClockView view = createClockView();
+        final Bitmap actual = render(view);
+
+        final File golden = new File(GOLDEN_DIR, getName() + ".png");
+        if (RECORD) {
+            writePng(actual, golden);
+            assumeTrue("recorded golden image " + golden, false);
+        }
+        if (!golden.exists()) {
+            writePng(actual, new File(REPORT_DIR, getName() + "_actual.png"));
+            fail(getName() + ": no golden image " + golden + ", record it with -PrecordGoldens");
+        }
+
+        final Bitmap expected = BitmapFactory.decodeFile(golden.getPath());
+        assertEquals("golden width", expected.getWidth(), actual.getWidth());
+        assertEquals("golden height", expected.getHeight(), actual.getHeight());
+
+        int mismatches = 0;
+        final Bitmap diff = Bitmap.createBitmap(actual.getWidth(), actual.getHeight(), Bitmap.Config.ARGB_8888);
+        for (int y = 0; y < actual.getHeight(); ++y) {
+            for (int x = 0; x < actual.getWidth(); ++x) {
+                if (!pixelMatches(expected.getPixel(x, y), actual.getPixel(x, y))) {
+                    diff.setPixel(x, y, Color.RED);
+                    ++mismatches;
+                }
+            }
+        }
+
+        final float ratio = mismatches / (float) (actual.getWidth() * actual.getHeight());
+        if (ratio > MAX_MISMATCH_RATIO) {
+            writePng(actual, new File(REPORT_DIR, getName() + "_actual.png"));
+            writePng(diff, new File(REPORT_DIR, getName() + "_diff.png"));
+        }
+        assertTrue(getName() + ": " + mismatches + " pixels differ from " + golden, ratio <= MAX_MISMATCH_RATIO);
+    }
+
+    @Test
+    public void render_withinBudget() {
+        final ClockView view = createClockView();
+        final Bitmap bitmap = render(view);
+        final Canvas canvas = new Canvas(bitmap);
+
+        for (int i = 0; i < WARMUP_FRAMES; ++i)
+            drawFrame(view, canvas, bitmap);
+
+        final long[] times = new long[TIMED_FRAMES];
+        for (int i = 0; i < TIMED_FRAMES; ++i) {
+            final long start = System.nanoTime();
+            drawFrame(view, canvas, bitmap);
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+
+        final float median = times[TIMED_FRAMES / 2] / 1e6f;
+        final float p90 = times[TIMED_FRAMES * 9 / 10] / 1e6f;
+        final float max = times[TIMED_FRAMES - 1] / 1e6f;
+        sTimings.add(String.format(Locale.US, "%s,%.3f,%.3f,%.3f,%.1f", getName(), median, p90, max, BUDGET_MS));
+        assertTrue(String.format(Locale.US, "%s: median frame %.3fms exceeds budget %.1fms", getName(), median, BUDGET_MS), median <= BUDGET_MS);
+    }
+
+    @Test
+    public void dialBounds_followScaleType() {
+        // a non-square dial catches mixed up width / height in setScaleTypeInternal()
+        final ShapeDrawable dial = new ShapeDrawable(new RectShape());
+        dial.getPaint().setColor(Color.WHITE);
+        dial.setIntrinsicWidth(120);
+        dial.setIntrinsicHeight(80);
+
+        final ClockView view = createClockView();
+        view.setDialDrawable(dial);
+        for (int i = 0; i < 3; ++i)
+            view.setHandDrawable(i, (Drawable) null);
+        final Bitmap bitmap = render(view);
+
+        final int[] expected = expectedDialBounds(view.getScaleType(), bitmap.getWidth(), bitmap.getHeight(), 120, 80);
+        assumeTrue(getName() + ": no fixed dial bounds", expected != null);
+
+        final int[] actual = opaqueBounds(bitmap);
+        for (int i = 0; i < 4; ++i)
+            assertTrue(getName() + ": dial bounds expected " + Arrays.toString(expected) + " but was " + Arrays.toString(actual),
+                    Math.abs(expected[i] - actual[i]) <= 1);
+    }
+
+    @Test
+    public void invalidateDrawable_dirtiesTheDrawnArea() {
+        // an opaque bar fills its bounds, so the pixels it adds are exactly the area it is drawn to
+        final ShapeDrawable bar = new ShapeDrawable(new RectShape());
+        bar.getPaint().setColor(Color.RED);
+        bar.setIntrinsicWidth(12);
+        bar.setIntrinsicHeight(70);
+
+        final TrackingClockView view = createClockView();
+        for (int i = 0; i < 3; ++i)
+            view.setHandDrawable(i, (Drawable) null);
+        // the dirty rect is in content coordinates, the same ones the view is scrolled over
+        for (final int[] scroll : new int[][]{{0, 0}, {-17, -23}}) {
+            final String name = getName() + "_scroll-" + scroll[0] + "," + scroll[1];
+            view.scrollTo(scroll[0], scroll[1]);
+            view.setHandDrawable(ClockView.HAND_HOUR, (Drawable) null);
+            final Bitmap without = render(view);
+            view.setHandDrawable(ClockView.HAND_HOUR, bar, mPivot, mPivot);
+            final Bitmap with = render(view);
+
+            view.dirty.setEmpty();
+            bar.invalidateSelf();
+            // the view clips what lies outside of it, e.g. with CENTER_CROP
+            assertTrue(name + ": nothing invalidated", view.dirty.intersect(0, 0, view.getWidth(), view.getHeight()));
+
+            final Rect drawn = new Rect();
+            for (int y = 0; y < with.getHeight(); ++y)
+                for (int x = 0; x < with.getWidth(); ++x)
+                    if (with.getPixel(x, y) != without.getPixel(x, y))
+                        drawn.union(x, y, x + 1, y + 1);
+            assertTrue(name + ": the bar is not drawn", !drawn.isEmpty());
+
+            if (mFace == Face.SHADOW || mFace == Face.GLOW) {
+                // the shadow reaches past the bar, and its mask has to be rendered again
+                assertEquals(name, new Rect(0, 0, view.getWidth(), view.getHeight()), view.dirty);
+                continue;
+            }
+            final String message = name + ": dirty " + view.dirty.toShortString() + ", drawn " + drawn.toShortString();
+            assertTrue(message, view.dirty.contains(drawn));
+            assertTrue(message, drawn.left - view.dirty.left <= DIRTY_SLACK && drawn.top - view.dirty.top <= DIRTY_SLACK);
+            assertTrue(message, view.dirty.right - drawn.right <= DIRTY_SLACK && view.dirty.bottom - drawn.bottom <= DIRTY_SLACK);
+        }
+    }
+
+    private String getName() {
+        return String.format(Locale.US, "%s_%s_adjust-%b_reversed-%b_pivot-%.2f",
+                mFace.name().toLowerCase(Locale.US), mScaleType.name().toLowerCase(Locale.US), mAdjustViewBounds, mDrawReversed, mPivot);
+    }
+
+    private TrackingClockView createClockView() {
+        // the faces go through the attributes, so the defaults picked in init() are covered too
+        final String pivot = Float.toString(mPivot);
+        final Robolectric.AttributeSetBuilder attrs = Robolectric.buildAttributeSet()
+                .addAttribute(R.attr.procedural, Boolean.toString(mFace != Face.XML && mFace != Face.NUMERALS_XML && mFace != Face.SHADOW))
+                .addAttribute(R.attr.hand_hour_cx, pivot)
+                .addAttribute(R.attr.hand_hour_cy, pivot)
+                .addAttribute(R.attr.hand_minute_cx, pivot)
+                .addAttribute(R.attr.hand_minute_cy, pivot);
+        switch (mFace) {
+            case NUMERALS_12H:
+                attrs.addAttribute(R.attr.dial_tickCount, "60")
+                        .addAttribute(R.attr.dial_numerals, "true");
+                break;
+            case NUMERALS_24H:
+                // every 24 hour numeral gets a major tick, every 12 hour one would have had one too
+                attrs.addAttribute(R.attr.dial_tickCount, "48")
+                        .addAttribute(R.attr.dial_numerals, "true");
+                break;
+            case NUMERALS_XML:
+                attrs.addAttribute(R.attr.dial_numerals, "true");
+                break;
+            case SHADOW:
+                attrs.addAttribute(R.attr.hand_shadowRadius, "4dp")
+                        .addAttribute(R.attr.hand_shadowDx, "3dp")
+                        .addAttribute(R.attr.hand_shadowDy, "3dp")
+                        .addAttribute(R.attr.hand_shadowColor, "#c00080ff");
+                break;
+            case GLOW:
+                attrs.addAttribute(R.attr.hand_shadowRadius, "6dp")
+                        .addAttribute(R.attr.hand_shadowColor, "#ff00ffff");
+                break;
+        }
+
+        final TrackingClockView view = new TrackingClockView(mContext, attrs.build());
+        if (mFace == Face.NUMERALS_24H)
+            view.setIs24hr(true);
+        view.setAdjustViewBounds(mAdjustViewBounds);
+        if (!mAdjustViewBounds)
+            view.setScaleType(mScaleType);
+        view.setDrawReversed(mDrawReversed);
+
+        view.setHandValue(ClockView.HAND_HOUR, 10.0f, false);
+        view.setHandValue(ClockView.HAND_MINUTE, 8.0f, false);
+        view.setHandValue(ClockView.HAND_SECOND, 37.0f, false);
+        return view;
+    }
+
+    private Bitmap render(ClockView view) {
+        final int heightSpec = mAdjustViewBounds
+                ? View.MeasureSpec.makeMeasureSpec(VIEW_MAX_HEIGHT, View.MeasureSpec.AT_MOST)
+                : View.MeasureSpec.makeMeasureSpec(VIEW_HEIGHT, View.MeasureSpec.EXACTLY);
+        view.measure(View.MeasureSpec.makeMeasureSpec(VIEW_WIDTH, View.MeasureSpec.EXACTLY), heightSpec);
+        if (mAdjustViewBounds) {
+            assertEquals(getName() + ": measured width", VIEW_WIDTH, view.getMeasuredWidth());
+            assertEquals(getName() + ": measured height follows the dial",
+                    VIEW_WIDTH * view.getSuggestedMinimumHeight() / view.getSuggestedMinimumWidth(), view.getMeasuredHeight());
+            assertEquals(getName() + ": adjustViewBounds forces FIT_CENTER", ImageView.ScaleType.FIT_CENTER, view.getScaleType());
+        }
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+
+        final Bitmap bitmap = Bitmap.createBitmap(view.getWidth(), view.getHeight(), Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(Color.BLACK);
+        // the parent applies the scroll before drawing its child
+        canvas.translate(-view.getScrollX(), -view.getScrollY());
+        view.draw(canvas);
+        return bitmap;
+    }
+
+    private static void drawFrame(ClockView view, Canvas canvas, Bitmap bitmap) {
+        bitmap.eraseColor(Color.BLACK);
+        view.draw(canvas);
+    }
+
+    private static int[] expectedDialBounds(ImageView.ScaleType scaleType, int width, int height, int dialWidth, int dialHeight) {
+        final float scale;
+        final float fit = Math.min(width / (float) dialWidth, height / (float) dialHeight);
+        switch (scaleType) {
+            case FIT_XY:
+                return new int[]{0, 0, width, height};
+            case FIT_START:
+                return new int[]{0, 0, Math.round(dialWidth * fit), Math.round(dialHeight * fit)};
+            case FIT_END:
+                return new int[]{Math.round(width - dialWidth * fit), Math.round(height - dialHeight * fit), width, height};
+            case FIT_CENTER:
+                scale = fit;
+                break;
+            case CENTER:
+                scale = 1.0f;
+                break;
+            case CENTER_CROP:
+                scale = Math.max(width / (float) dialWidth, height / (float) dialHeight);
+                break;
+            case CENTER_INSIDE:
+                scale = Math.min(1.0f, fit);
+                break;
+            default:
+                return null;
+        }
+        final float left = (width - dialWidth * scale) / 2;
+        final float top = (height - dialHeight * scale) / 2;
+        return new int[]{
+                Math.max(0, Math.round(left)),
+                Math.max(0, Math.round(top)),
+                Math.min(width, Math.round(left + dialWidth * scale)),
+                Math.min(height, Math.round(top + dialHeight * scale))
+        };
+    }
+
+    private static int[] opaqueBounds(Bitmap bitmap) {
+        int left = bitmap.getWidth(), top = bitmap.getHeight(), right = 0, bottom = 0;
+        for (int y = 0; y < bitmap.getHeight(); ++y) {
+            for (int x = 0; x < bitmap.getWidth(); ++x) {
+                if (bitmap.getPixel(x, y) != Color.BLACK) {
+                    left = Math.min(left, x);
+                    top = Math.min(top, y);
+                    right = Math.max(right, x + 1);
+                    bottom = Math.max(bottom, y + 1);
+                }
+            }
+        }
+        return new int[]{left, top, right, bottom};
+    }
+
+    private static boolean pixelMatches(int expected, int actual) {
+        return Math.abs(Color.alpha(expected) - Color.alpha(actual)) <= CHANNEL_TOLERANCE &&
+                Math.abs(Color.red(expected) - Color.red(actual)) <= CHANNEL_TOLERANCE &&
+                Math.abs(Color.green(expected) - Color.green(actual)) <= CHANNEL_TOLERANCE &&
+                Math.abs(Color.blue(expected) - Color.blue(actual)) <= CHANNEL_TOLERANCE;
+    }
+
+    private static void writePng(Bitmap bitmap, File file) throws IOException {
+        final File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("unable to create " + dir);
+        try (OutputStream out = new FileOutputStream(file)) {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        }
+    }
+
+    /**
+     * Collects the area {@link ClockView#invalidateDrawable(Drawable)} asks to repaint.
+     */
+    private static class TrackingClockView extends ClockView {
+        // init() already invalidates from the ClockView constructor
+        Rect dirty;
+
+        TrackingClockView(Context context, AttributeSet attrs) {
+            super(context, attrs);
+            dirty = new Rect();
+        }
+
+        @Override
+        public void invalidate() {
+            if (dirty != null)
+                dirty.set(0, 0, getWidth(), getHeight());
+            super.invalidate();
+        }
+
+        @Override
+        public void invalidate(int l, int t, int r, int b) {
+            // as View.invalidate(l, t, r, b) dirties it, on screen
+            if (dirty != null)
+                dirty.union(l - getScrollX(), t - getScrollY(), r - getScrollX(), b - getScrollY());
+            super.invalidate(l, t, r, b);
+        }
+    }
+}
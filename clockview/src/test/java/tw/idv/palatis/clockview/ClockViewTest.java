@@ -0,0 +1,46 @@
+package tw.idv.palatis.clockview;
+
+import android.os.Looper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowChoreographer;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks the hand values of {@link ClockView} outside of drawing.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class ClockViewTest {
+    @Test
+    public void setHandValue_withoutAnimationCancelsTheRunningOne() {
+        // frames follow the looper clock, instead of finishing every animation on the first one
+        ShadowChoreographer.setPaused(true);
+
+        // a recycled clock in a list is rebound while the previous item's hands are still animating
+        final ClockView view = new ClockView(RuntimeEnvironment.getApplication());
+        view.setHandValue(ClockView.HAND_MINUTE, 0.0f, false);
+        view.setHandValue(ClockView.HAND_MINUTE, 30.0f, true);
+        runFrames(6);
+        final float value = view.getHandValue(ClockView.HAND_MINUTE);
+        assertTrue("animating, at " + value, value > 0.0f && value < 30.0f);
+
+        view.setHandValue(ClockView.HAND_MINUTE, 10.0f, false);
+        runFrames(60);
+        assertEquals(10.0f, view.getHandValue(ClockView.HAND_MINUTE), 0.0f);
+    }
+
+    private static void runFrames(int count) {
+        for (int i = 0; i < count; ++i)
+            shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(16));
+    }
+}